@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ThreadContext.StoredContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.floragunn.searchguard.auditlog.NullAuditLog;
+import com.floragunn.searchguard.auth.BackendRegistry;
+import com.floragunn.searchguard.auth.internal.InternalAuthenticationBackend;
+import com.floragunn.searchguard.configuration.AdminDNs;
+import com.floragunn.searchguard.sgconf.DynamicConfigModel;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.user.User;
+
+/**
+ * Transport authentication with basic credentials against the internal users database.
+ * The hot users are served from the user cache. Uncached users are authenticated by a second registry
+ * whose caches are disabled, so every call needs a lookup and a password check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackendRegistryBenchmark {
+
+    private static final String ACTION = "indices:data/read/search";
+    private static final String PRINCIPAL = "CN=benchmark,OU=client,O=client,L=test,C=de";
+    private static final int HOT_USERS = 1000;
+
+    @Param({"10000"})
+    public int roles;
+
+    @Param({"100000"})
+    public int users;
+
+    private BenchmarkNode node;
+    private BackendRegistry backendRegistry;
+    private BackendRegistry uncachedBackendRegistry;
+    private String[] authorizationHeaders;
+    private final SearchRequest request = new SearchRequest();
+
+    @Setup
+    public void setup() {
+        final SyntheticSecurityConfig config = new SyntheticSecurityConfig(roles, 0, users);
+        final InMemoryConfigurationRepository repository = config.repository(true);
+        this.node = new BenchmarkNode(config.clusterState());
+        this.backendRegistry = new BackendRegistry(Settings.EMPTY, null, new AdminDNs(Settings.EMPTY), null,
+                new InternalAuthenticationBackend(repository), new NullAuditLog(), node.getThreadPool(), new DynamicConfigModel(repository));
+        backendRegistry.onChange(repository.getConfiguration(ConfigConstants.CONFIGNAME_CONFIG, false));
+        //a ttl of 0 disables the user caches
+        this.uncachedBackendRegistry = new BackendRegistry(Settings.builder().put(ConfigConstants.SEARCHGUARD_CACHE_TTL_MINUTES, 0).build(),
+                null, new AdminDNs(Settings.EMPTY), null, new InternalAuthenticationBackend(repository), new NullAuditLog(),
+                node.getThreadPool(), new DynamicConfigModel(repository));
+        uncachedBackendRegistry.onChange(repository.getConfiguration(ConfigConstants.CONFIGNAME_CONFIG, false));
+
+        this.authorizationHeaders = new String[users];
+        for (int i = 0; i < users; i++) {
+            authorizationHeaders[i] = SyntheticSecurityConfig.basicAuthorizationHeader(i);
+        }
+
+        for (int i = 0; i < Math.min(users, HOT_USERS); i++) {
+            authenticate(backendRegistry, i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        node.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private int next;
+    }
+
+    private User authenticate(final BackendRegistry backendRegistry, final int user) {
+        try(StoredContext ctx = node.getThreadContext().stashContext()) {
+            node.getThreadContext().putHeader("Authorization", authorizationHeaders[user]);
+            return backendRegistry.authenticate(request, PRINCIPAL, null, ACTION);
+        }
+    }
+
+    @Benchmark
+    public User authenticateHotUsers(final Caller caller) {
+        return authenticate(backendRegistry, (caller.next++ & Integer.MAX_VALUE) % Math.min(users, HOT_USERS));
+    }
+
+    @Benchmark
+    public User authenticateUncached(final Caller caller) {
+        return authenticate(uncachedBackendRegistry, (caller.next++ & Integer.MAX_VALUE) % users);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.floragunn.searchguard.support.Base64Helper;
+import com.floragunn.searchguard.user.AuthCredentials;
+import com.floragunn.searchguard.user.User;
+
+/**
+ * Serialization of the user into the transport headers, done for every request forwarded to another node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64HelperBenchmark {
+
+    private User user;
+    private String serializedUser;
+
+    @Setup
+    public void setup() {
+        final AuthCredentials attributes = new AuthCredentials("user_0");
+        attributes.addAttribute("attr.internal.department", "benchmark");
+        this.user = new User("user_0", Arrays.asList(SyntheticSecurityConfig.backendRoleName(0), SyntheticSecurityConfig.backendRoleName(1)), attributes);
+        this.serializedUser = Base64Helper.serializeObject(user);
+    }
+
+    @Benchmark
+    public String serializeUser() {
+        return Base64Helper.serializeObject(user);
+    }
+
+    @Benchmark
+    public Serializable deserializeUser() {
+        return Base64Helper.deserializeObject(serializedUser);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.mockito.Mockito;
+
+import com.floragunn.searchguard.support.ConfigConstants;
+
+/**
+ * The node level services the security hot path needs, without starting a node.
+ * The cluster service is a mock which always returns the given cluster state.
+ */
+public final class BenchmarkNode implements AutoCloseable {
+
+    private final ThreadPool threadPool;
+    private final ClusterService clusterService;
+    private final IndexNameExpressionResolver resolver;
+
+    public BenchmarkNode(final ClusterState state) {
+        this.threadPool = new ThreadPool(Settings.builder().put("node.name", "benchmark").build());
+        this.clusterService = Mockito.mock(ClusterService.class);
+        Mockito.when(clusterService.state()).thenReturn(state);
+        this.resolver = new IndexNameExpressionResolver(Settings.EMPTY);
+    }
+
+    public ThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    public ThreadContext getThreadContext() {
+        return threadPool.getThreadContext();
+    }
+
+    public ClusterService getClusterService() {
+        return clusterService;
+    }
+
+    public IndexNameExpressionResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * The thread context is thread local, so this must be called on every benchmark thread
+     */
+    public void putRemoteAddress() {
+        if(getThreadContext().getTransient(ConfigConstants.SG_REMOTE_ADDRESS) == null) {
+            getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, new TransportAddress(InetAddress.getLoopbackAddress(), 9300));
+        }
+    }
+
+    @Override
+    public void close() {
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.elasticsearch.common.settings.Settings;
+
+import com.floragunn.searchguard.configuration.ConfigurationChangeListener;
+import com.floragunn.searchguard.configuration.ConfigurationRepository;
+
+/**
+ * Configuration repository which keeps the configuration in memory and never changes it,
+ * the version is only increased on {@link #persistConfiguration(String, Settings)}.
+ */
+public class InMemoryConfigurationRepository implements ConfigurationRepository {
+
+    private final Map<String, Settings> configurations = new HashMap<>();
+    private final Map<String, List<ConfigurationChangeListener>> listeners = new HashMap<>();
+    private volatile long version = 1L;
+
+    public InMemoryConfigurationRepository(final Map<String, Settings> configurations) {
+        this.configurations.putAll(configurations);
+    }
+
+    @Override
+    public synchronized Settings getConfiguration(final String configurationType, final boolean triggerComplianceWhenCached) {
+        return configurations.get(configurationType);
+    }
+
+    @Override
+    public synchronized Map<String, Settings> reloadConfiguration(final Collection<String> configTypes) {
+        final Map<String, Settings> result = new HashMap<>();
+        for(final String configType: configTypes) {
+            final Settings settings = configurations.get(configType);
+            if(settings != null) {
+                result.put(configType, settings);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void persistConfiguration(final String configurationType, final Settings settings) {
+        final List<ConfigurationChangeListener> _listeners;
+        synchronized (this) {
+            configurations.put(configurationType, settings);
+            _listeners = listeners.get(configurationType);
+        }
+
+        if(_listeners != null) {
+            for(final ConfigurationChangeListener listener: _listeners) {
+                listener.onChange(settings);
+            }
+        }
+
+        version++;
+    }
+
+    @Override
+    public synchronized void subscribeOnChange(final String configurationType, final ConfigurationChangeListener listener) {
+        listeners.computeIfAbsent(configurationType, k->new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public long getConfigVersion() {
+        return version;
+    }
+}
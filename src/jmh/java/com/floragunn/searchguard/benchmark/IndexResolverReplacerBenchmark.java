@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsRequest;
+import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsRequest;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
+import org.elasticsearch.action.admin.indices.validate.query.ValidateQueryRequest;
+import org.elasticsearch.action.explain.ExplainRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.termvectors.TermVectorsRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.floragunn.searchguard.configuration.ClusterInfoHolder;
+import com.floragunn.searchguard.resolver.IndexResolverReplacer;
+import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
+import com.floragunn.searchguard.support.ConfigConstants;
+
+/**
+ * Resolving the indices of search requests with a wildcard, an alias and a concrete index against a large cluster.
+ * Run with <code>-p resolvedCacheSize=0</code> to measure the resolution without the resolved indices cache.
+ * <p>
+ * {@link #resolveMixedRequestTypes(Caller)} resolves the types of different request classes from as many threads
+ * as a large search thread pool, which shows contention on the lookup of the <code>type()</code> and <code>types()</code> methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexResolverReplacerBenchmark {
+
+    private static final int REQUESTS = 1024;
+
+    @Param({"10000"})
+    public int roles;
+
+    @Param({"50000"})
+    public int indices;
+
+    @Param({"1000"})
+    public int resolvedCacheSize;
+
+    private BenchmarkNode node;
+    private IndexResolverReplacer irr;
+    private SearchRequest[] wildcardRequests;
+    private SearchRequest[] aliasRequests;
+    private SearchRequest[] concreteRequests;
+    private Object[] mixedRequests;
+
+    @Setup
+    public void setup() {
+        final SyntheticSecurityConfig config = new SyntheticSecurityConfig(roles, indices, 0);
+        this.node = new BenchmarkNode(config.clusterState());
+        this.irr = new IndexResolverReplacer(node.getResolver(), node.getClusterService(), new ClusterInfoHolder(),
+                Settings.builder().put(ConfigConstants.SEARCHGUARD_CACHE_RESOLVED_INDICES_MAX_SIZE, resolvedCacheSize).build());
+
+        this.wildcardRequests = new SearchRequest[REQUESTS];
+        this.aliasRequests = new SearchRequest[REQUESTS];
+        this.concreteRequests = new SearchRequest[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            final int role = (i * 31) % roles;
+            wildcardRequests[i] = new SearchRequest(SyntheticSecurityConfig.teamIndexPattern(role));
+            aliasRequests[i] = new SearchRequest(SyntheticSecurityConfig.aliasName(role));
+            concreteRequests[i] = new SearchRequest(config.indexName((i * 31) % indices));
+        }
+
+        //only the first ones have a specialized type lookup, all others are resolved through their type() or types() methods
+        final String index = config.indexName(0);
+        this.mixedRequests = new Object[] {
+                new SearchRequest(index).types("doc", "log"),
+                new GetRequest(index, "doc", "1"),
+                new PutMappingRequest(index).type("doc"),
+                new GetMappingsRequest().indices(index).types("doc", "log"),
+                new GetFieldMappingsRequest().indices(index).types("doc").fields("field"),
+                new ExplainRequest(index, "doc", "1"),
+                new TermVectorsRequest(index, "doc", "1"),
+                new ValidateQueryRequest(index).types("doc")
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        node.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private int next;
+    }
+
+    @Benchmark
+    public Resolved resolveWildcard(final Caller caller) {
+        return irr.resolveRequest(wildcardRequests[caller.next++ & (REQUESTS - 1)]);
+    }
+
+    @Benchmark
+    public Resolved resolveAlias(final Caller caller) {
+        return irr.resolveRequest(aliasRequests[caller.next++ & (REQUESTS - 1)]);
+    }
+
+    @Benchmark
+    public Resolved resolveConcreteIndex(final Caller caller) {
+        return irr.resolveRequest(concreteRequests[caller.next++ & (REQUESTS - 1)]);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Resolved resolveMixedRequestTypes(final Caller caller) {
+        return irr.resolveRequest(mixedRequests[(caller.next++ & Integer.MAX_VALUE) % mixedRequests.length]);
+    }
+}
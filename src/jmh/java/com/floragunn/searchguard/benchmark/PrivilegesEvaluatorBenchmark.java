@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.floragunn.searchguard.auditlog.NullAuditLog;
+import com.floragunn.searchguard.configuration.ActionGroupHolder;
+import com.floragunn.searchguard.configuration.ClusterInfoHolder;
+import com.floragunn.searchguard.configuration.PrivilegesEvaluator;
+import com.floragunn.searchguard.configuration.PrivilegesEvaluator.PrivEvalResponse;
+import com.floragunn.searchguard.configuration.PrivilegesInterceptor;
+import com.floragunn.searchguard.sgconf.DynamicConfigModel;
+import com.floragunn.searchguard.user.User;
+
+/**
+ * Evaluating a search on the indices of the own team for many different users, and for a small set of active users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrivilegesEvaluatorBenchmark {
+
+    private static final String ACTION = "indices:data/read/search";
+    private static final int HOT_USERS = 1000;
+
+    @Param({"10000"})
+    public int roles;
+
+    @Param({"50000"})
+    public int indices;
+
+    @Param({"100000"})
+    public int users;
+
+    private BenchmarkNode node;
+    private PrivilegesEvaluator evaluator;
+    private User[] principals;
+    private SearchRequest[] requests;
+
+    @Setup
+    public void setup() {
+        final SyntheticSecurityConfig config = new SyntheticSecurityConfig(roles, indices, users);
+        final InMemoryConfigurationRepository repository = config.repository(false);
+        this.node = new BenchmarkNode(config.clusterState());
+        this.evaluator = new PrivilegesEvaluator(node.getClusterService(), node.getThreadPool(), repository, new ActionGroupHolder(repository),
+                node.getResolver(), new NullAuditLog(), Settings.EMPTY,
+                new PrivilegesInterceptor(node.getResolver(), node.getClusterService(), null, node.getThreadPool()),
+                new ClusterInfoHolder(), new DynamicConfigModel(repository));
+
+        this.principals = new User[users];
+        for (int i = 0; i < users; i++) {
+            principals[i] = new User(SyntheticSecurityConfig.userName(i),
+                    Collections.singleton(SyntheticSecurityConfig.backendRoleName(config.roleOf(i))), null);
+        }
+
+        this.requests = new SearchRequest[roles];
+        for (int i = 0; i < roles; i++) {
+            requests[i] = new SearchRequest(SyntheticSecurityConfig.teamIndexPattern(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        node.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+
+        private int next;
+
+        @Setup
+        public void setup(final PrivilegesEvaluatorBenchmark benchmark) {
+            benchmark.node.putRemoteAddress();
+        }
+    }
+
+    private PrivEvalResponse evaluate(final int user) {
+        return evaluator.evaluate(principals[user], ACTION, requests[user % roles], null);
+    }
+
+    @Benchmark
+    public PrivEvalResponse evaluateAllUsers(final Caller caller) {
+        return evaluate((caller.next++ & Integer.MAX_VALUE) % users);
+    }
+
+    @Benchmark
+    public PrivEvalResponse evaluateHotUsers(final Caller caller) {
+        return evaluate((caller.next++ & Integer.MAX_VALUE) % Math.min(users, HOT_USERS));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.Settings;
+
+import com.floragunn.searchguard.support.ConfigConstants;
+
+/**
+ * Synthetic Search Guard configuration and cluster metadata of a configurable size.
+ * <p>
+ * Every role <code>sg_role_N</code> grants read access to the indices <code>teamN-*</code> and is mapped to the
+ * backend role <code>backend_N</code>. Internal users are distributed round robin over the backend roles and share
+ * the password {@link #PASSWORD}. Indices are distributed round robin over the teams and every team has an alias.
+ */
+public final class SyntheticSecurityConfig {
+
+    public static final String PASSWORD = "password";
+    //low cost, the benchmarks measure the surrounding code and not bcrypt
+    private static final int BCRYPT_COST = 4;
+
+    private final int roles;
+    private final int indices;
+    private final int users;
+
+    public SyntheticSecurityConfig(final int roles, final int indices, final int users) {
+        this.roles = roles;
+        this.indices = indices;
+        this.users = users;
+    }
+
+    public int getRoles() {
+        return roles;
+    }
+
+    public int getIndices() {
+        return indices;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public static String roleName(final int role) {
+        return "sg_role_"+role;
+    }
+
+    public static String backendRoleName(final int role) {
+        return "backend_"+role;
+    }
+
+    public static String teamIndexPattern(final int role) {
+        return "team"+role+"-*";
+    }
+
+    public static String aliasName(final int role) {
+        return "alias-team"+role;
+    }
+
+    public String indexName(final int index) {
+        return "team"+(index % roles)+"-"+(index / roles);
+    }
+
+    public static String userName(final int user) {
+        return "user_"+user;
+    }
+
+    public int roleOf(final int user) {
+        return user % roles;
+    }
+
+    public static String basicAuthorizationHeader(final int user) {
+        return "Basic "+Base64.getEncoder().encodeToString((userName(user)+":"+PASSWORD).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Settings actionGroups() {
+        return Settings.builder()
+                .putList("READ", "indices:data/read*", "indices:admin/mappings/fields/get*")
+                .putList("CRUD", "READ", "indices:data/write*")
+                .putList("CLUSTER_COMPOSITE_OPS_RO", "indices:data/read/mget", "indices:data/read/msearch",
+                        "indices:data/read/mtv", "indices:data/read/coordinate-msearch*", "indices:admin/aliases/exists*",
+                        "indices:admin/aliases/get*", "indices:data/read/scroll")
+                .build();
+    }
+
+    public Settings roles() {
+        final Settings.Builder builder = Settings.builder();
+        for (int i = 0; i < roles; i++) {
+            final String role = roleName(i);
+            builder.putList(role+".cluster", "CLUSTER_COMPOSITE_OPS_RO");
+            builder.putList(role+".indices."+teamIndexPattern(i)+".*", "READ");
+            builder.putList(role+".indices."+aliasName(i)+".*", "CRUD");
+        }
+        return builder.build();
+    }
+
+    public Settings rolesMapping() {
+        final Settings.Builder builder = Settings.builder();
+        for (int i = 0; i < roles; i++) {
+            builder.putList(roleName(i)+".backendroles", backendRoleName(i));
+        }
+        return builder.build();
+    }
+
+    public Settings internalUsers() {
+        final byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        final String hash = OpenBSDBCrypt.generate(PASSWORD.toCharArray(), salt, BCRYPT_COST);
+
+        final Settings.Builder builder = Settings.builder();
+        for (int i = 0; i < users; i++) {
+            final String user = userName(i);
+            builder.put(user+".hash", hash);
+            builder.putList(user+".roles", backendRoleName(roleOf(i)));
+        }
+        return builder.build();
+    }
+
+    public Settings config() {
+        return Settings.builder()
+                .put("searchguard.dynamic.kibana.multitenancy_enabled", false)
+                .put("searchguard.dynamic.authc.basic_internal_auth_domain.http_enabled", true)
+                .put("searchguard.dynamic.authc.basic_internal_auth_domain.transport_enabled", true)
+                .put("searchguard.dynamic.authc.basic_internal_auth_domain.order", 0)
+                .put("searchguard.dynamic.authc.basic_internal_auth_domain.http_authenticator.type", "basic")
+                .put("searchguard.dynamic.authc.basic_internal_auth_domain.http_authenticator.challenge", true)
+                .put("searchguard.dynamic.authc.basic_internal_auth_domain.authentication_backend.type", "intern")
+                .build();
+    }
+
+    /**
+     *
+     * @param includeInternalUsers hashing the passwords of many users takes a while, skip it if not needed
+     * @return a repository with all configuration types
+     */
+    public InMemoryConfigurationRepository repository(final boolean includeInternalUsers) {
+        final Map<String, Settings> configurations = new HashMap<>();
+        configurations.put(ConfigConstants.CONFIGNAME_ACTION_GROUPS, actionGroups());
+        configurations.put(ConfigConstants.CONFIGNAME_ROLES, roles());
+        configurations.put(ConfigConstants.CONFIGNAME_ROLES_MAPPING, rolesMapping());
+        configurations.put(ConfigConstants.CONFIGNAME_CONFIG, config());
+        configurations.put(ConfigConstants.CONFIGNAME_INTERNAL_USERS, includeInternalUsers?internalUsers():Settings.EMPTY);
+        return new InMemoryConfigurationRepository(configurations);
+    }
+
+    public ClusterState clusterState() {
+        final Settings indexSettings = Settings.builder()
+                .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .build();
+
+        final MetaData.Builder metaData = MetaData.builder().version(1L);
+        for (int i = 0; i < indices; i++) {
+            metaData.put(IndexMetaData.builder(indexName(i))
+                    .settings(indexSettings)
+                    .putAlias(AliasMetaData.builder(aliasName(i % roles)))
+                    .build(), false);
+        }
+
+        return ClusterState.builder(new ClusterName("benchmark")).metaData(metaData).build();
+    }
+}
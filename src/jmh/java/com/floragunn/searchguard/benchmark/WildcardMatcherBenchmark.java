@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.floragunn.searchguard.support.WildcardMatcher;
+
+/**
+ * Matching index names against the index patterns of all roles, like the privileges evaluation does
+ * if a user has many roles. Compares the plain, the per pattern compiled and the compiled set matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WildcardMatcherBenchmark {
+
+    private static final int CANDIDATES = 1024;
+
+    @Param({"10000"})
+    public int roles;
+
+    private String[] patterns;
+    private WildcardMatcher.Matcher[] matchers;
+    private WildcardMatcher.Matcher matcherSet;
+    private String[] candidates;
+    private int next;
+
+    @Setup
+    public void setup() {
+        final SyntheticSecurityConfig config = new SyntheticSecurityConfig(roles, CANDIDATES, 0);
+        final List<String> patterns = new ArrayList<>(roles * 2);
+        for (int i = 0; i < roles; i++) {
+            patterns.add(SyntheticSecurityConfig.teamIndexPattern(i));
+            patterns.add(SyntheticSecurityConfig.aliasName(i));
+        }
+
+        this.patterns = patterns.toArray(new String[0]);
+        this.matchers = WildcardMatcher.compile(patterns);
+        this.matcherSet = WildcardMatcher.compileSet(patterns);
+        this.candidates = new String[CANDIDATES];
+        for (int i = 0; i < CANDIDATES; i++) {
+            //unknown names are the worst case because all patterns are tried
+            candidates[i] = i % 2 == 0?config.indexName(i * 7):"unknown-"+i;
+        }
+    }
+
+    private String nextCandidate() {
+        return candidates[next++ & (CANDIDATES - 1)];
+    }
+
+    @Benchmark
+    public boolean matchAny() {
+        return WildcardMatcher.matchAny(patterns, nextCandidate());
+    }
+
+    @Benchmark
+    public boolean matchAnyCompiled() {
+        return WildcardMatcher.matchAny(matchers, nextCandidate());
+    }
+
+    @Benchmark
+    public boolean matchAnyCompiledSet() {
+        return matcherSet.matches(nextCandidate());
+    }
+
+    @Benchmark
+    public boolean matchSinglePattern() {
+        return WildcardMatcher.match(patterns[(next & (CANDIDATES - 1)) * 2], nextCandidate());
+    }
+}
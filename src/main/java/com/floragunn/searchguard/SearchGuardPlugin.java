@@ -70,6 +70,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.PageCacheRecycler;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.env.Environment;
@@ -92,6 +93,8 @@ import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.RemoteClusterService;
 import org.elasticsearch.transport.Transport;
@@ -110,6 +113,8 @@ import com.floragunn.searchguard.action.configupdate.ConfigUpdateAction;
 import com.floragunn.searchguard.action.configupdate.TransportConfigUpdateAction;
 import com.floragunn.searchguard.action.licenseinfo.LicenseInfoAction;
 import com.floragunn.searchguard.action.licenseinfo.TransportLicenseInfoAction;
+import com.floragunn.searchguard.action.stats.StatsInfoAction;
+import com.floragunn.searchguard.action.stats.TransportStatsInfoAction;
 import com.floragunn.searchguard.action.whoami.TransportWhoAmIAction;
 import com.floragunn.searchguard.action.whoami.WhoAmIAction;
 import com.floragunn.searchguard.auditlog.AuditLog;
@@ -140,6 +145,8 @@ import com.floragunn.searchguard.rest.KibanaInfoAction;
 import com.floragunn.searchguard.rest.SearchGuardHealthAction;
 import com.floragunn.searchguard.rest.SearchGuardInfoAction;
 import com.floragunn.searchguard.rest.SearchGuardLicenseAction;
+import com.floragunn.searchguard.rest.SearchGuardStatsAction;
+import com.floragunn.searchguard.sgconf.DynamicConfigModel;
 import com.floragunn.searchguard.ssl.SearchGuardSSLPlugin;
 import com.floragunn.searchguard.ssl.SslExceptionHandler;
 import com.floragunn.searchguard.ssl.http.netty.ValidatingDispatcher;
@@ -417,6 +424,7 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
             handlers.add(new SearchGuardInfoAction(settings, restController, Objects.requireNonNull(evaluator), Objects.requireNonNull(threadPool)));
             handlers.add(new KibanaInfoAction(settings, restController, Objects.requireNonNull(evaluator), Objects.requireNonNull(threadPool)));
             handlers.add(new SearchGuardLicenseAction(settings, restController));
+            handlers.add(new SearchGuardStatsAction(settings, restController));
             handlers.add(new SearchGuardHealthAction(settings, restController, Objects.requireNonNull(backendRegistry)));
 
             Collection<RestHandler> apiHandler = ReflectionHelper
@@ -433,6 +441,19 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
         return handlers;
     }
 
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(final Settings settings) {
+        final List<ExecutorBuilder<?>> builders = new ArrayList<>(super.getExecutorBuilders(settings));
+
+        if (!client && !tribeNodeClient && !disabled) {
+            //password hashing is cpu bound, so more threads than processors do not help
+            builders.add(new FixedExecutorBuilder(settings, ConfigConstants.SEARCHGUARD_AUTH_THREADPOOL_NAME,
+                    EsExecutors.numberOfProcessors(settings), 1000, ConfigConstants.SEARCHGUARD_AUTH_THREADPOOL_PREFIX));
+        }
+
+        return builders;
+    }
+
     @Override
     public UnaryOperator<RestHandler> getRestHandlerWrapper(final ThreadContext threadContext) {
 
@@ -449,6 +470,7 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
         if(!tribeNodeClient && !disabled) {
             actions.add(new ActionHandler<>(ConfigUpdateAction.INSTANCE, TransportConfigUpdateAction.class));
             actions.add(new ActionHandler<>(LicenseInfoAction.INSTANCE, TransportLicenseInfoAction.class));
+            actions.add(new ActionHandler<>(StatsInfoAction.INSTANCE, TransportStatsInfoAction.class));
             actions.add(new ActionHandler<>(WhoAmIAction.INSTANCE, TransportWhoAmIAction.class));
         }
         return actions;
@@ -728,7 +750,7 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
         DlsFlsRequestValve dlsFlsValve = ReflectionHelper.instantiateDlsFlsValve();
 
         final IndexNameExpressionResolver resolver = new IndexNameExpressionResolver(settings);
-        irr = new IndexResolverReplacer(resolver, clusterService, cih);
+        irr = new IndexResolverReplacer(resolver, clusterService, cih, settings);
         auditLog = ReflectionHelper.instantiateAuditLog(settings, configPath, localClient, threadPool, resolver, clusterService);
         complianceConfig = (dlsFlsAvailable && (auditLog.getClass() != NullAuditLog.class))?new ComplianceConfig(environment, Objects.requireNonNull(irr), auditLog):null;
         log.debug("Compliance config is "+complianceConfig+" because of dlsFlsAvailable: "+dlsFlsAvailable+" and auditLog="+auditLog.getClass());
@@ -754,12 +776,15 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
         cr = (IndexBaseConfigurationRepository) IndexBaseConfigurationRepository.create(settings, this.configPath, threadPool, localClient, clusterService, auditLog, complianceConfig);
         cr.subscribeOnLicenseChange(complianceConfig);
         final InternalAuthenticationBackend iab = new InternalAuthenticationBackend(cr);
-        final XFFResolver xffResolver = new XFFResolver(threadPool);
+        cr.subscribeOnChange(ConfigConstants.CONFIGNAME_INTERNAL_USERS, iab);
+        final DynamicConfigModel dcm = new DynamicConfigModel(cr);
+        cr.subscribeOnChange(ConfigConstants.CONFIGNAME_CONFIG, dcm);
+        final XFFResolver xffResolver = new XFFResolver(threadPool, dcm);
         cr.subscribeOnChange(ConfigConstants.CONFIGNAME_CONFIG, xffResolver);
-        backendRegistry = new BackendRegistry(settings, configPath, adminDns, xffResolver, iab, auditLog, threadPool);
+        backendRegistry = new BackendRegistry(settings, configPath, adminDns, xffResolver, iab, auditLog, threadPool, dcm);
         cr.subscribeOnChange(ConfigConstants.CONFIGNAME_CONFIG, backendRegistry);
         final ActionGroupHolder ah = new ActionGroupHolder(cr);
-        evaluator = new PrivilegesEvaluator(clusterService, threadPool, cr, ah, resolver, auditLog, settings, privilegesInterceptor, cih);
+        evaluator = new PrivilegesEvaluator(clusterService, threadPool, cr, ah, resolver, auditLog, settings, privilegesInterceptor, cih, dcm);
         
         final CompatConfig compatConfig = new CompatConfig(environment);
         cr.subscribeOnChange(ConfigConstants.CONFIGNAME_CONFIG, compatConfig);
@@ -841,6 +866,15 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
 
         settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_DISABLED, false, Property.NodeScope, Property.Filtered));
         settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_TTL_MINUTES, 60, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.longSetting(ConfigConstants.SEARCHGUARD_CACHE_USERS_MAX_SIZE, 100000L, 0L, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.longSetting(ConfigConstants.SEARCHGUARD_CACHE_USERS_MAX_WEIGHT, 0L, 0L, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_USERS_CONCURRENCY_LEVEL, 4, 1, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_EFFECTIVE_PERMISSIONS_MAX_SIZE, 10000, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_DLS_FLS_MAX_SIZE, 10000, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_DECISIONS_MAX_SIZE, 0, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_RESOLVED_INDICES_MAX_SIZE, 1000, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_FAILED_AUTHENTICATIONS_MAX_SIZE, 10000, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_FAILED_AUTHENTICATIONS_TTL_SECONDS, 60, 1, Property.NodeScope, Property.Filtered));
 
         //SG6
         settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_ENTERPRISE_MODULES_ENABLED, true, Property.NodeScope, Property.Filtered));
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.action.stats;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class StatsInfoAction extends Action<StatsInfoRequest, StatsInfoResponse, StatsInfoRequestBuilder> {
+
+    public static final StatsInfoAction INSTANCE = new StatsInfoAction();
+    public static final String NAME = "cluster:monitor/searchguard/stats";
+
+    protected StatsInfoAction() {
+        super(NAME);
+    }
+
+    @Override
+    public StatsInfoRequestBuilder newRequestBuilder(final ElasticsearchClient client) {
+        return new StatsInfoRequestBuilder(client, this);
+    }
+
+    @Override
+    public StatsInfoResponse newResponse() {
+        return new StatsInfoResponse();
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.action.stats;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import com.floragunn.searchguard.auth.AuthExecutorStats;
+import com.floragunn.searchguard.support.CacheStatsInfo;
+
+public class StatsInfoNodeResponse extends BaseNodeResponse implements ToXContentFragment {
+
+    private Map<String, CacheStatsInfo> caches;
+    private Map<String, Object> authThreadPool;
+
+    StatsInfoNodeResponse() {
+    }
+
+    public StatsInfoNodeResponse(final DiscoveryNode node, final Map<String, CacheStatsInfo> caches, final AuthExecutorStats authStats) {
+        super(node);
+        this.caches = caches;
+        this.authThreadPool = new TreeMap<>();
+        if(authStats != null) {
+            authThreadPool.put("enabled", authStats.isEnabled());
+            authThreadPool.put("forked", authStats.getForked());
+            authThreadPool.put("rejected", authStats.getRejected());
+            authThreadPool.put("queue_size", authStats.getQueueSize());
+            authThreadPool.put("active_threads", authStats.getActiveThreads());
+            authThreadPool.put("average_wait_in_millis", authStats.getAverageWaitMillis());
+            authThreadPool.put("max_wait_in_millis", authStats.getMaxWaitMillis());
+        }
+    }
+
+    public static StatsInfoNodeResponse readNodeResponse(StreamInput in) throws IOException {
+        StatsInfoNodeResponse nodeResponse = new StatsInfoNodeResponse();
+        nodeResponse.readFrom(in);
+        return nodeResponse;
+    }
+
+    /**
+     *
+     * @return the statistics of the caches of this node by cache name
+     */
+    public Map<String, CacheStatsInfo> getCaches() {
+        return caches;
+    }
+
+    public Map<String, Object> getAuthThreadPool() {
+        return authThreadPool;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeMap(caches, StreamOutput::writeString, (o, v) -> v.writeTo(o));
+        out.writeMap(authThreadPool);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        caches = new TreeMap<>(in.readMap(StreamInput::readString, CacheStatsInfo::new));
+        authThreadPool = new TreeMap<>(in.readMap());
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        builder.startObject("caches");
+        for(Map.Entry<String, CacheStatsInfo> cache: caches.entrySet()) {
+            builder.field(cache.getKey(), cache.getValue());
+        }
+        builder.endObject();
+        builder.field("auth_thread_pool", authThreadPool);
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return "StatsInfoNodeResponse [caches=" + caches + ", authThreadPool=" + authThreadPool + "]";
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.action.stats;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import com.floragunn.searchguard.auth.BackendRegistry;
+import com.floragunn.searchguard.configuration.PrivilegesEvaluator;
+import com.floragunn.searchguard.support.CacheStatsInfo;
+
+public class TransportStatsInfoAction
+extends
+TransportNodesAction<StatsInfoRequest, StatsInfoResponse, TransportStatsInfoAction.NodeStatsRequest, StatsInfoNodeResponse> {
+
+    private final BackendRegistry backendRegistry;
+    private final PrivilegesEvaluator evaluator;
+
+    @Inject
+    public TransportStatsInfoAction(final Settings settings,
+            final ThreadPool threadPool, final ClusterService clusterService, final TransportService transportService,
+            final BackendRegistry backendRegistry, final PrivilegesEvaluator evaluator,
+            final ActionFilters actionFilters, final IndexNameExpressionResolver indexNameExpressionResolver) {
+
+        super(settings, StatsInfoAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, StatsInfoRequest::new, TransportStatsInfoAction.NodeStatsRequest::new,
+                ThreadPool.Names.MANAGEMENT, StatsInfoNodeResponse.class);
+
+        this.backendRegistry = backendRegistry;
+        this.evaluator = evaluator;
+    }
+
+    public static class NodeStatsRequest extends BaseNodeRequest {
+
+        StatsInfoRequest request;
+
+        public NodeStatsRequest() {
+        }
+
+        public NodeStatsRequest(final String nodeId, final StatsInfoRequest request) {
+            super(nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new StatsInfoRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+
+    protected NodeStatsRequest newNodeRequest(final String nodeId, final StatsInfoRequest request) {
+        return new NodeStatsRequest(nodeId, request);
+    }
+
+    @Override
+    protected StatsInfoNodeResponse newNodeResponse() {
+        return new StatsInfoNodeResponse();
+    }
+
+    @Override
+    protected StatsInfoResponse newResponse(StatsInfoRequest request, List<StatsInfoNodeResponse> responses,
+            List<FailedNodeException> failures) {
+        return new StatsInfoResponse(this.clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected StatsInfoNodeResponse nodeOperation(final NodeStatsRequest request) {
+        final Map<String, CacheStatsInfo> caches = new TreeMap<>(backendRegistry.getCacheStats());
+        caches.putAll(evaluator.getCacheStats());
+        return new StatsInfoNodeResponse(clusterService.localNode(), caches, backendRegistry.getAuthExecutorStats());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.auth;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the authentications which were forked to the auth thread pool because the user was not cached.
+ */
+public final class AuthExecutorStats {
+
+    private final ExecutorService executor;
+    private final LongAdder forked = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0L);
+
+    AuthExecutorStats(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    void onFork() {
+        forked.increment();
+    }
+
+    void onStart(final long waitedNanos) {
+        started.increment();
+        waitNanos.add(waitedNanos);
+        maxWaitNanos.accumulate(waitedNanos);
+    }
+
+    void onRejection() {
+        rejected.increment();
+    }
+
+    /**
+     *
+     * @return false if there is no auth thread pool and users are always authenticated on the calling thread
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    public long getForked() {
+        return forked.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     *
+     * @return the number of forked authentications waiting for a thread
+     */
+    public int getQueueSize() {
+        return executor instanceof ThreadPoolExecutor?((ThreadPoolExecutor) executor).getQueue().size():0;
+    }
+
+    public int getActiveThreads() {
+        return executor instanceof ThreadPoolExecutor?((ThreadPoolExecutor) executor).getActiveCount():0;
+    }
+
+    public long getAverageWaitMillis() {
+        final long count = started.sum();
+        return count == 0?0L:TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / count);
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "AuthExecutorStats [forked=" + getForked() + ", rejected=" + getRejected() + ", queueSize=" + getQueueSize()
+                + ", averageWaitMillis=" + getAverageWaitMillis() + ", maxWaitMillis=" + getMaxWaitMillis() + "]";
+    }
+}
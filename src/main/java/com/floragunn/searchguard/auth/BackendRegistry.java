@@ -18,15 +18,20 @@
 package com.floragunn.searchguard.auth;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.naming.InvalidNameException;
@@ -35,7 +40,9 @@ import javax.naming.ldap.LdapName;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
@@ -55,7 +62,9 @@ import com.floragunn.searchguard.http.HTTPBasicAuthenticator;
 import com.floragunn.searchguard.http.HTTPClientCertAuthenticator;
 import com.floragunn.searchguard.http.HTTPProxyAuthenticator;
 import com.floragunn.searchguard.http.XFFResolver;
+import com.floragunn.searchguard.sgconf.DynamicConfigModel;
 import com.floragunn.searchguard.ssl.util.Utils;
+import com.floragunn.searchguard.support.CacheStatsInfo;
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.support.HTTPHelper;
 import com.floragunn.searchguard.support.ReflectionHelper;
@@ -66,6 +75,7 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 
 public class BackendRegistry implements ConfigurationChangeListener {
 
@@ -85,15 +95,54 @@ public class BackendRegistry implements ConfigurationChangeListener {
     private final InternalAuthenticationBackend iab;
     private final AuditLog auditLog;
     private final ThreadPool threadPool;
+    private final DynamicConfigModel dynamicConfigModel;
     private final int ttlInMin;
+    private final long userCacheMaxSize;
+    private final long userCacheMaxWeight;
+    private final int userCacheConcurrencyLevel;
     private Cache<AuthCredentials, User> userCache;
     private Cache<String, User> userCacheTransport;
     private Cache<AuthCredentials, User> authenticatedUserCacheTransport;
     private Cache<String, User> restImpersonationCache;
+    private final int failedAuthCacheSize;
+    private final int failedAuthTtlInSec;
+    //credentials a backend rejected recently, null if disabled
+    private Cache<FailedAuthentication, Boolean> failedAuthCache;
+    //null if there is no auth thread pool, then users are always authenticated on the calling thread
+    private final ExecutorService authExecutor;
+    private final AuthExecutorStats authStats;
+
+    //roles and attributes make up most of the memory of a cached user
+    private static final Weigher<Object, Object> USER_WEIGHER = new Weigher<Object, Object>() {
+        @Override
+        public int weigh(Object key, Object value) {
+            if(value instanceof User) {
+                final User user = (User) value;
+                return 1 + user.getRoles().size() + user.getCustomAttributesMap().size();
+            }
+            return 1;
+        }
+    };
 
-    private void createCaches() {
-        userCache = CacheBuilder.newBuilder()
+    private CacheBuilder<Object, Object> newUserCacheBuilder() {
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
                 .expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+                .concurrencyLevel(userCacheConcurrencyLevel)
+                .recordStats();
+
+        if(userCacheMaxWeight > 0) {
+            return builder.maximumWeight(userCacheMaxWeight).weigher(USER_WEIGHER);
+        }
+
+        if(userCacheMaxSize > 0) {
+            builder.maximumSize(userCacheMaxSize);
+        }
+
+        return builder;
+    }
+
+    private void createCaches() {
+        userCache = newUserCacheBuilder()
                 .removalListener(new RemovalListener<AuthCredentials, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<AuthCredentials, User> notification) {
@@ -101,8 +150,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
                     }
                 }).build();
 
-        userCacheTransport = CacheBuilder.newBuilder()
-                .expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        userCacheTransport = newUserCacheBuilder()
                 .removalListener(new RemovalListener<String, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<String, User> notification) {
@@ -110,8 +158,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
                     }
                 }).build();
 
-        authenticatedUserCacheTransport = CacheBuilder.newBuilder()
-                .expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        authenticatedUserCacheTransport = newUserCacheBuilder()
                 .removalListener(new RemovalListener<AuthCredentials, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<AuthCredentials, User> notification) {
@@ -119,18 +166,28 @@ public class BackendRegistry implements ConfigurationChangeListener {
                     }
                 }).build();
 
-        restImpersonationCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        restImpersonationCache = newUserCacheBuilder()
                 .removalListener(new RemovalListener<String, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<String, User> notification) {
                         log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
                     }
                 }).build();
+
+        if(failedAuthCacheSize > 0) {
+            failedAuthCache = CacheBuilder.newBuilder()
+                    .maximumSize(failedAuthCacheSize)
+                    .expireAfterWrite(failedAuthTtlInSec, TimeUnit.SECONDS)
+                    .recordStats()
+                    .build();
+        } else {
+            failedAuthCache = null;
+        }
     }
 
     public BackendRegistry(final Settings settings, final Path configPath, final AdminDNs adminDns,
-            final XFFResolver xffResolver, final InternalAuthenticationBackend iab, final AuditLog auditLog, final ThreadPool threadPool) {
+            final XFFResolver xffResolver, final InternalAuthenticationBackend iab, final AuditLog auditLog, final ThreadPool threadPool,
+            final DynamicConfigModel dynamicConfigModel) {
         this.adminDns = adminDns;
         this.esSettings = settings;
         this.configPath = configPath;
@@ -138,6 +195,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
         this.iab = iab;
         this.auditLog = auditLog;
         this.threadPool = threadPool;
+        this.dynamicConfigModel = dynamicConfigModel;
 
         authImplMap.put("intern_c", InternalAuthenticationBackend.class.getName());
         authImplMap.put("intern_z", NoOpAuthorizationBackend.class.getName());
@@ -160,7 +218,26 @@ public class BackendRegistry implements ConfigurationChangeListener {
         authImplMap.put("saml_h", "com.floragunn.dlic.auth.http.saml.HTTPSamlAuthenticator");
 
         this.ttlInMin = settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_TTL_MINUTES, 60);
+        this.userCacheMaxSize = settings.getAsLong(ConfigConstants.SEARCHGUARD_CACHE_USERS_MAX_SIZE, 100000L);
+        this.userCacheMaxWeight = settings.getAsLong(ConfigConstants.SEARCHGUARD_CACHE_USERS_MAX_WEIGHT, 0L);
+        this.userCacheConcurrencyLevel = settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_USERS_CONCURRENCY_LEVEL, 4);
+        this.failedAuthCacheSize = settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_FAILED_AUTHENTICATIONS_MAX_SIZE, 10000);
+        this.failedAuthTtlInSec = settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_FAILED_AUTHENTICATIONS_TTL_SECONDS, 60);
         createCaches();
+
+        ExecutorService _authExecutor;
+        try {
+            _authExecutor = threadPool.executor(ConfigConstants.SEARCHGUARD_AUTH_THREADPOOL_NAME);
+        } catch (IllegalArgumentException e) {
+            log.debug("No {} thread pool, authenticate on the calling thread", ConfigConstants.SEARCHGUARD_AUTH_THREADPOOL_NAME);
+            _authExecutor = null;
+        }
+        this.authExecutor = _authExecutor;
+        this.authStats = new AuthExecutorStats(_authExecutor);
+    }
+
+    public AuthExecutorStats getAuthExecutorStats() {
+        return authStats;
     }
 
     public boolean isInitialized() {
@@ -172,6 +249,34 @@ public class BackendRegistry implements ConfigurationChangeListener {
         userCacheTransport.invalidateAll();
         authenticatedUserCacheTransport.invalidateAll();
         restImpersonationCache.invalidateAll();
+        if(failedAuthCache != null) {
+            failedAuthCache.invalidateAll();
+        }
+    }
+
+    /**
+     * 
+     * @return the stats of the failed authentications cache, hits are the rejections without asking a backend
+     * and misses are not recorded, null if the cache is disabled
+     */
+    public CacheStatsInfo getFailedAuthCacheStats() {
+        return CacheStatsInfo.of(failedAuthCache);
+    }
+
+    /**
+     * 
+     * @return the stats of all user caches by name
+     */
+    public Map<String, CacheStatsInfo> getCacheStats() {
+        final Map<String, CacheStatsInfo> stats = new TreeMap<>();
+        stats.put("users_rest", CacheStatsInfo.of(userCache));
+        stats.put("users_transport", CacheStatsInfo.of(userCacheTransport));
+        stats.put("authenticated_users_transport", CacheStatsInfo.of(authenticatedUserCacheTransport));
+        stats.put("rest_impersonation", CacheStatsInfo.of(restImpersonationCache));
+        if(failedAuthCache != null) {
+            stats.put("failed_authentications", CacheStatsInfo.of(failedAuthCache));
+        }
+        return stats;
     }
 
     @Override
@@ -184,7 +289,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
         transportAuthorizers.clear();
         invalidateCache();
         destroyDestroyables();
-        anonymousAuthEnabled = settings.getAsBoolean("searchguard.dynamic.http.anonymous_auth_enabled", false)
+        anonymousAuthEnabled = dynamicConfigModel.getDynamicConfig(settings).isAnonymousAuthEnabled()
                 && !esSettings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPLIANCE_DISABLE_ANONYMOUS_AUTHENTICATION, false);
 
         final Map<String, Settings> authzDyn = settings.getGroups("searchguard.dynamic.authz");
@@ -361,13 +466,17 @@ public class BackendRegistry implements ConfigurationChangeListener {
 
 
     /**
+     * Authenticate a REST request. If the credentials of a user are not cached, the authentication backend
+     * is asked on the {@value ConfigConstants#SEARCHGUARD_AUTH_THREADPOOL_NAME} thread pool, because checking
+     * a password hash is expensive and the calling thread is usually a network thread.
      *
      * @param request
      * @param channel
-     * @return The authenticated user, null means another roundtrip
-     * @throws ElasticsearchSecurityException
+     * @param threadContext
+     * @param listener notified with true if the request is authenticated, with false if a response was already sent
+     * (another roundtrip or authentication failed). Notified on the calling thread unless the authentication was forked.
      */
-    public boolean authenticate(final RestRequest request, final RestChannel channel, final ThreadContext threadContext) {
+    public void authenticate(final RestRequest request, final RestChannel channel, final ThreadContext threadContext, final ActionListener<Boolean> listener) {
 
         final String sslPrincipal = (String) threadPool.getThreadContext().getTransient(ConfigConstants.SG_SSL_PRINCIPAL);
 
@@ -375,150 +484,312 @@ public class BackendRegistry implements ConfigurationChangeListener {
             //PKI authenticated REST call
             threadPool.getThreadContext().putTransient(ConfigConstants.SG_USER, new User(sslPrincipal));
             auditLog.logSucceededLogin(sslPrincipal, true, null, request);
-            return true;
+            listener.onResponse(true);
+            return;
         }
 
         if (!isInitialized()) {
             log.error("Not yet initialized (you may need to run sgadmin)");
             channel.sendResponse(new BytesRestResponse(RestStatus.SERVICE_UNAVAILABLE, "Search Guard not initialized (SG11). See http://docs.search-guard.com/v6/sgadmin"));
-            return false;
+            listener.onResponse(false);
+            return;
         }
 
         threadContext.putTransient(ConfigConstants.SG_REMOTE_ADDRESS, xffResolver.resolve(request));
 
-        boolean authenticated = false;
+        new RestAuthentication(request, channel, threadContext, listener).run();
+    }
 
-        User authenticatedUser = null;
+    /**
+     * Loop over the REST auth domains. The loop is suspended and continued on the auth thread pool
+     * before the first authentication backend call which is not served from the user cache.
+     * After a fork the rest handler is continued on the generic thread pool, so that slow handlers
+     * do not occupy the bounded auth thread pool.
+     */
+    private final class RestAuthentication extends AbstractRunnable {
+
+        private final RestRequest request;
+        private final RestChannel channel;
+        private final ThreadContext threadContext;
+        private final ActionListener<Boolean> listener;
+        //the live auth domains until forked, then a snapshot of the remaining ones because they may change meanwhile
+        private Iterator<AuthDomain> authDomains = restAuthDomains.iterator();
+        private int checkedAuthDomains = 0;
+        private AuthCredentials authCredentials = null;
+        private AuthCredentials pendingCredentials = null;
+        private HTTPAuthenticator firstChallengingHttpAuthenticator = null;
+        private boolean forked = false;
+        private long forkedAt;
+
+        private RestAuthentication(final RestRequest request, final RestChannel channel, final ThreadContext threadContext,
+                final ActionListener<Boolean> listener) {
+            this.request = request;
+            this.channel = channel;
+            this.threadContext = threadContext;
+            this.listener = listener;
+        }
 
-        AuthCredentials authCredenetials = null;
+        @Override
+        protected void doRun() {
+            final Boolean authenticated = authenticate();
 
-        HTTPAuthenticator firstChallengingHttpAuthenticator = null;
+            if(authenticated != null) {
+                listener.onResponse(authenticated);
+            }
+        }
 
-        //loop over all http/rest auth domains
-        for (final AuthDomain authDomain: restAuthDomains) {
+        @Override
+        public void onFailure(final Exception e) {
+            listener.onFailure(e);
+        }
 
-            final HTTPAuthenticator httpAuthenticator = authDomain.getHttpAuthenticator();
+        private boolean mustFork(final AuthCredentials ac, final AuthenticationBackend authBackend) {
+            if(forked || authExecutor == null) {
+                return false;
+            }
 
-            if(authDomain.isChallenge() && firstChallengingHttpAuthenticator == null) {
-                firstChallengingHttpAuthenticator = httpAuthenticator;
+            if(authBackend.getClass() == NoOpAuthenticationBackend.class && restAuthorizers.isEmpty()) {
+                //not cached, but cheap
+                return false;
             }
 
-            if(log.isTraceEnabled()) {
-                log.trace("Try to extract auth creds from {} http authenticator", httpAuthenticator.getType());
+            //rejecting known bad credentials is cheap too, probe through asMap() which does not count as cache access
+            return !userCache.asMap().containsKey(ac)
+                    && (failedAuthCache == null || !failedAuthCache.asMap().containsKey(new FailedAuthentication(authBackend, ac)));
+        }
+
+        private void fork(final AuthDomain current) {
+            final List<AuthDomain> remaining = new ArrayList<>();
+            remaining.add(current);
+            while(authDomains.hasNext()) {
+                remaining.add(authDomains.next());
             }
-            final AuthCredentials ac;
+            authDomains = remaining.iterator();
+            forked = true;
+            forkedAt = System.nanoTime();
+            authStats.onFork();
+            final ForkedAuthentication forkedAuthentication = new ForkedAuthentication();
             try {
-                ac = httpAuthenticator.extractCredentials(request, threadContext);
-            } catch (Exception e1) {
-                if(log.isDebugEnabled()) {
-                    log.debug("'{}' extracting credentials from {} http authenticator", e1.toString(), httpAuthenticator.getType(), e1);
-                }
-                continue;
+                //the executor preserves the thread context
+                authExecutor.execute(forkedAuthentication);
+            } catch (RejectedExecutionException e) {
+                forkedAuthentication.onRejection(e);
             }
-            authCredenetials = ac;
+        }
 
-            if (ac == null) {
-                //no credentials found in request
-                if(anonymousAuthEnabled) {
-                    continue;
-                }
+        /**
+         * Continues the authentication on the auth thread pool
+         */
+        private final class ForkedAuthentication extends AbstractRunnable {
 
-                if(authDomain.isChallenge() && httpAuthenticator.reRequestAuthentication(channel, null)) {
-                    auditLog.logFailedLogin("<NONE>", false, null, request);
-                    log.trace("No 'Authorization' header, send 401 and 'WWW-Authenticate Basic'");
-                    return false;
-                } else {
-                    //no reRequest possible
-                	log.trace("No 'Authorization' header, send 403");
-                    continue;
-                }
-            } else {
-                org.apache.logging.log4j.ThreadContext.put("user", ac.getUsername());
-                if (!ac.isComplete()) {
-                    //credentials found in request but we need another client challenge
-                    if(httpAuthenticator.reRequestAuthentication(channel, ac)) {
-                        //auditLog.logFailedLogin(ac.getUsername()+" <incomplete>", request); --noauditlog
-                        return false;
-                    } else {
-                        //no reRequest possible
-                        continue;
-                    }
+            @Override
+            protected void doRun() {
+                authStats.onStart(System.nanoTime() - forkedAt);
+                org.apache.logging.log4j.ThreadContext.clearAll();
+                org.apache.logging.log4j.ThreadContext.put("user", pendingCredentials.getUsername());
+
+                final Boolean authenticated = authenticate();
 
+                if(authenticated == Boolean.TRUE) {
+                    threadPool.generic().execute(new Continuation());
+                } else if(authenticated != null) {
+                    //the response is already sent
+                    listener.onResponse(false);
                 }
             }
 
-            //http completed       
-            authenticatedUser = authcz(userCache, ac, authDomain.getBackend(), restAuthorizers);
+            @Override
+            public void onFailure(final Exception e) {
+                listener.onFailure(e);
+            }
 
-            if(authenticatedUser == null) {
-                if(log.isDebugEnabled()) {
-                    log.debug("Cannot authenticate user {} (or add roles) with authdomain {}/{}, try next", ac.getUsername(), authDomain.getBackend().getType(), authDomain.getOrder());
-                }
-                continue;
+            @Override
+            public void onRejection(final Exception e) {
+                authStats.onRejection();
+                log.warn("Cannot authenticate {} because the auth thread pool is exhausted", pendingCredentials.getUsername());
+                super.onRejection(e);
             }
 
-            if(adminDns.isAdmin(authenticatedUser.getName())) {
-                log.error("Cannot authenticate user because admin user is not permitted to login via HTTP");
-                auditLog.logFailedLogin(authenticatedUser.getName(), true, null, request);
-                channel.sendResponse(new BytesRestResponse(RestStatus.FORBIDDEN, "Cannot authenticate user because admin user is not permitted to login via HTTP"));
-                return false;
+            @Override
+            public void onAfter() {
+                //pool threads are reused for other users
+                org.apache.logging.log4j.ThreadContext.remove("user");
             }
+        }
 
-            final String tenant = Utils.coalesce(request.header("sgtenant"), request.header("sg_tenant"));
+        /**
+         * Continues the rest handler after a successful forked authentication
+         */
+        private final class Continuation extends AbstractRunnable {
 
-            if(log.isDebugEnabled()) {
-                log.debug("User '{}' is authenticated", authenticatedUser);
-                log.debug("sgtenant '{}'", tenant);
+            @Override
+            protected void doRun() {
+                listener.onResponse(true);
             }
 
-            authenticatedUser.setRequestedTenant(tenant);
-            final User impersonatedUser = impersonate(request, authenticatedUser, authDomain.getBackend());
-            threadContext.putTransient(ConfigConstants.SG_USER, impersonatedUser==null?authenticatedUser:impersonatedUser);
+            @Override
+            public void onFailure(final Exception e) {
+                listener.onFailure(e);
+            }
 
-            auditLog.logSucceededLogin((impersonatedUser==null?authenticatedUser:impersonatedUser).getName(), false, authenticatedUser.getName(), request);
-            authenticated = true;
-            break;
-        }//end looping auth domains
+            @Override
+            public void onAfter() {
+                org.apache.logging.log4j.ThreadContext.remove("user");
+            }
+        }
 
+        /**
+         *
+         * @return null if the authentication was forked
+         */
+        private Boolean authenticate() {
 
-        if(!authenticated) {
-            if(log.isDebugEnabled()) {
-                log.debug("User still not authenticated after checking {} auth domains", restAuthDomains.size());
-            }
+            User authenticatedUser = null;
+            boolean authenticated = false;
+
+            //loop over all http/rest auth domains
+            while (authDomains.hasNext()) {
+
+                final AuthDomain authDomain = authDomains.next();
+                final HTTPAuthenticator httpAuthenticator = authDomain.getHttpAuthenticator();
+                final AuthCredentials ac;
+
+                if(pendingCredentials != null) {
+                    //continue a forked authentication
+                    ac = pendingCredentials;
+                    pendingCredentials = null;
+                } else {
+
+                    checkedAuthDomains++;
+
+                    if(authDomain.isChallenge() && firstChallengingHttpAuthenticator == null) {
+                        firstChallengingHttpAuthenticator = httpAuthenticator;
+                    }
+
+                    if(log.isTraceEnabled()) {
+                        log.trace("Try to extract auth creds from {} http authenticator", httpAuthenticator.getType());
+                    }
+
+                    try {
+                        ac = httpAuthenticator.extractCredentials(request, threadContext);
+                    } catch (Exception e1) {
+                        if(log.isDebugEnabled()) {
+                            log.debug("'{}' extracting credentials from {} http authenticator", e1.toString(), httpAuthenticator.getType(), e1);
+                        }
+                        continue;
+                    }
+                    authCredentials = ac;
+
+                    if (ac == null) {
+                        //no credentials found in request
+                        if(anonymousAuthEnabled) {
+                            continue;
+                        }
+
+                        if(authDomain.isChallenge() && httpAuthenticator.reRequestAuthentication(channel, null)) {
+                            auditLog.logFailedLogin("<NONE>", false, null, request);
+                            log.trace("No 'Authorization' header, send 401 and 'WWW-Authenticate Basic'");
+                            return false;
+                        } else {
+                            //no reRequest possible
+                            log.trace("No 'Authorization' header, send 403");
+                            continue;
+                        }
+                    } else {
+                        org.apache.logging.log4j.ThreadContext.put("user", ac.getUsername());
+                        if (!ac.isComplete()) {
+                            //credentials found in request but we need another client challenge
+                            if(httpAuthenticator.reRequestAuthentication(channel, ac)) {
+                                //auditLog.logFailedLogin(ac.getUsername()+" <incomplete>", request); --noauditlog
+                                return false;
+                            } else {
+                                //no reRequest possible
+                                continue;
+                            }
+
+                        }
+                    }
+
+                    if(mustFork(ac, authDomain.getBackend())) {
+                        pendingCredentials = ac;
+                        fork(authDomain);
+                        return null;
+                    }
+                }
+
+                //http completed       
+                authenticatedUser = authcz(userCache, ac, authDomain.getBackend(), restAuthorizers);
+
+                if(authenticatedUser == null) {
+                    if(log.isDebugEnabled()) {
+                        log.debug("Cannot authenticate user {} (or add roles) with authdomain {}/{}, try next", ac.getUsername(), authDomain.getBackend().getType(), authDomain.getOrder());
+                    }
+                    continue;
+                }
+
+                if(adminDns.isAdmin(authenticatedUser.getName())) {
+                    log.error("Cannot authenticate user because admin user is not permitted to login via HTTP");
+                    auditLog.logFailedLogin(authenticatedUser.getName(), true, null, request);
+                    channel.sendResponse(new BytesRestResponse(RestStatus.FORBIDDEN, "Cannot authenticate user because admin user is not permitted to login via HTTP"));
+                    return false;
+                }
+
+                final String tenant = Utils.coalesce(request.header("sgtenant"), request.header("sg_tenant"));
 
-            if(authCredenetials == null && anonymousAuthEnabled) {
-            	threadContext.putTransient(ConfigConstants.SG_USER, User.ANONYMOUS);
-            	auditLog.logSucceededLogin(User.ANONYMOUS.getName(), false, null, request);
                 if(log.isDebugEnabled()) {
-                    log.debug("Anonymous User is authenticated");
+                    log.debug("User '{}' is authenticated", authenticatedUser);
+                    log.debug("sgtenant '{}'", tenant);
                 }
-                return true;
-            }
 
-            if(firstChallengingHttpAuthenticator != null) {
+                authenticatedUser.setRequestedTenant(tenant);
+                final User impersonatedUser = impersonate(request, authenticatedUser, authDomain.getBackend());
+                threadContext.putTransient(ConfigConstants.SG_USER, impersonatedUser==null?authenticatedUser:impersonatedUser);
+
+                auditLog.logSucceededLogin((impersonatedUser==null?authenticatedUser:impersonatedUser).getName(), false, authenticatedUser.getName(), request);
+                authenticated = true;
+                break;
+            }//end looping auth domains
+
 
+            if(!authenticated) {
                 if(log.isDebugEnabled()) {
-                    log.debug("Rerequest with {}", firstChallengingHttpAuthenticator.getClass());
+                    log.debug("User still not authenticated after checking {} auth domains", checkedAuthDomains);
                 }
 
-                if(firstChallengingHttpAuthenticator.reRequestAuthentication(channel, null)) {
+                if(authCredentials == null && anonymousAuthEnabled) {
+                    threadContext.putTransient(ConfigConstants.SG_USER, User.ANONYMOUS);
+                    auditLog.logSucceededLogin(User.ANONYMOUS.getName(), false, null, request);
                     if(log.isDebugEnabled()) {
-                        log.debug("Rerequest {} failed", firstChallengingHttpAuthenticator.getClass());
+                        log.debug("Anonymous User is authenticated");
                     }
+                    return true;
+                }
 
-                    log.warn("Authentication finally failed for {}", authCredenetials == null ? null:authCredenetials.getUsername());
-                    auditLog.logFailedLogin(authCredenetials == null ? null:authCredenetials.getUsername(), false, null, request);
-                    return false;
+                if(firstChallengingHttpAuthenticator != null) {
+
+                    if(log.isDebugEnabled()) {
+                        log.debug("Rerequest with {}", firstChallengingHttpAuthenticator.getClass());
+                    }
+
+                    if(firstChallengingHttpAuthenticator.reRequestAuthentication(channel, null)) {
+                        if(log.isDebugEnabled()) {
+                            log.debug("Rerequest {} failed", firstChallengingHttpAuthenticator.getClass());
+                        }
+
+                        log.warn("Authentication finally failed for {}", authCredentials == null ? null:authCredentials.getUsername());
+                        auditLog.logFailedLogin(authCredentials == null ? null:authCredentials.getUsername(), false, null, request);
+                        return false;
+                    }
                 }
+
+                log.warn("Authentication finally failed for {}", authCredentials == null ? null:authCredentials.getUsername());
+                auditLog.logFailedLogin(authCredentials == null ? null:authCredentials.getUsername(), false, null, request);
+                channel.sendResponse(new BytesRestResponse(RestStatus.UNAUTHORIZED, "Authentication finally failed"));
+                return false;
             }
 
-            log.warn("Authentication finally failed for {}", authCredenetials == null ? null:authCredenetials.getUsername());
-            auditLog.logFailedLogin(authCredenetials == null ? null:authCredenetials.getUsername(), false, null, request);
-            channel.sendResponse(new BytesRestResponse(RestStatus.UNAUTHORIZED, "Authentication finally failed"));
-            return false;
+            return authenticated;
         }
-
-        return authenticated;
     }
 
     /**
@@ -587,9 +858,18 @@ public class BackendRegistry implements ConfigurationChangeListener {
                 //no cache
                 return authBackend.authenticate(ac);
             }
-        
 
-        
+            //probe through asMap() so that only the lookup below and the served rejections count in the cache stats
+            if(failedAuthCache != null && ac.hasPasswordDigest() && !cache.asMap().containsKey(ac)
+                    && failedAuthCache.asMap().containsKey(new FailedAuthentication(authBackend, ac))) {
+                //count the rejection as hit
+                failedAuthCache.getIfPresent(new FailedAuthentication(authBackend, ac));
+                if(log.isDebugEnabled()) {
+                    log.debug("{} was recently rejected by {} backend, do not ask again", ac.getUsername(), authBackend.getType());
+                }
+                return null;
+            }
+
             return cache.get(ac, new Callable<User>() {
                 @Override
                 public User call() throws Exception {
@@ -612,12 +892,57 @@ public class BackendRegistry implements ConfigurationChangeListener {
             if(log.isDebugEnabled()) {
                 log.debug("Can not authenticate "+ac.getUsername()+" due to "+e.toString(), e);
             }
+
+            //only remember passwords the backend rejected, not failures like an unreachable ldap server
+            if(failedAuthCache != null && ac.hasPasswordDigest() && isRejectedCredentials(e.getCause())) {
+                failedAuthCache.put(new FailedAuthentication(authBackend, ac), Boolean.TRUE);
+            }
             return null;
         } finally {
             ac.clearSecrets();
         }
     }
 
+    /**
+     * Backends signal that the credentials themselves are wrong (unknown user or password mismatch)
+     * with a 401 status. Other security exceptions like a missing configuration or an unreachable
+     * server are not cached, otherwise users would be locked out until the entries expire.
+     */
+    private static boolean isRejectedCredentials(final Throwable e) {
+        return e instanceof ElasticsearchSecurityException && ((ElasticsearchSecurityException) e).status() == RestStatus.UNAUTHORIZED;
+    }
+
+    /**
+     * Credentials with a password rejected by a particular backend, other auth domains may still accept them.
+     * Credentials without a password are never equal to each other and are not cached.
+     */
+    private static final class FailedAuthentication {
+        private final AuthenticationBackend backend;
+        private final AuthCredentials credentials;
+
+        private FailedAuthentication(final AuthenticationBackend backend, final AuthCredentials credentials) {
+            this.backend = backend;
+            this.credentials = credentials;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(backend) + credentials.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FailedAuthentication)) {
+                return false;
+            }
+            final FailedAuthentication other = (FailedAuthentication) obj;
+            return backend == other.backend && credentials.equals(other.credentials);
+        }
+    }
+
     private User impersonate(final TransportRequest tr, final User origPKIuser) throws ElasticsearchSecurityException {
 
         final String impersonatedUser = threadPool.getThreadContext().getHeader("sg_impersonate_as");
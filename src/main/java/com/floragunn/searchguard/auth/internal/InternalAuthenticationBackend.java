@@ -21,23 +21,26 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
 import org.elasticsearch.ElasticsearchSecurityException;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
 
 import com.floragunn.searchguard.auth.AuthenticationBackend;
 import com.floragunn.searchguard.auth.AuthorizationBackend;
+import com.floragunn.searchguard.configuration.ConfigurationChangeListener;
 import com.floragunn.searchguard.configuration.ConfigurationRepository;
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.user.AuthCredentials;
 import com.floragunn.searchguard.user.User;
 
-public class InternalAuthenticationBackend implements AuthenticationBackend, AuthorizationBackend {
+public class InternalAuthenticationBackend implements AuthenticationBackend, AuthorizationBackend, ConfigurationChangeListener {
 
     private final ConfigurationRepository configurationRepository;
+    private volatile InternalUsers internalUsers;
 
     public InternalAuthenticationBackend(final ConfigurationRepository configurationRepository) {
         super();
@@ -47,29 +50,18 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
     @Override
     public boolean exists(User user) {
 
-        final Settings cfg = getConfigSettings();
-        if (cfg == null) {
+        final InternalUsers internalUsers = getInternalUsers();
+        if (internalUsers == null) {
             return false;
         }
         
-        String hashed = cfg.get(user.getName() + ".hash");
+        final String hashed = internalUsers.getHash(user.getName());
 
         if (hashed == null) {
-            
-            for(String username:cfg.names()) {
-                String u = cfg.get(username + ".username");
-                if(user.getName().equals(u)) {
-                    hashed = cfg.get(username+ ".hash");
-                    break;
-                }
-            }
-            
-            if(hashed == null) {
-                return false;
-            }
+            return false;
         }
         
-        final List<String> roles = cfg.getAsList(user.getName() + ".roles", Collections.emptyList());
+        final List<String> roles = internalUsers.getRoles(user.getName());
         
         if(roles != null) {
             user.addRoles(roles);
@@ -81,33 +73,22 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
     @Override
     public User authenticate(final AuthCredentials credentials) {
         
-        final Settings cfg = getConfigSettings();
-        if (cfg == null) {
+        final InternalUsers internalUsers = getInternalUsers();
+        if (internalUsers == null) {
             throw new ElasticsearchSecurityException("Internal authentication backend not configured. May be Search Guard is not initialized. See http://docs.search-guard.com/v6/sgadmin");
 
         }
 
-        String hashed = cfg.get(credentials.getUsername() + ".hash");
+        final String hashed = internalUsers.getHash(credentials.getUsername());
 
         if (hashed == null) {
-            
-            for(String username:cfg.names()) {
-                String u = cfg.get(username + ".username");
-                if(credentials.getUsername().equals(u)) {
-                    hashed = cfg.get(username+ ".hash");
-                    break;
-                }
-            }
-            
-            if(hashed == null) {
-                throw new ElasticsearchSecurityException(credentials.getUsername() + " not found");
-            }
+            throw new ElasticsearchSecurityException(credentials.getUsername() + " not found", RestStatus.UNAUTHORIZED);
         }
         
         final byte[] password = credentials.getPassword();
         
         if(password == null || password.length == 0) {
-            throw new ElasticsearchSecurityException("empty passwords not supported");
+            throw new ElasticsearchSecurityException("empty passwords not supported", RestStatus.UNAUTHORIZED);
         }
 
         ByteBuffer wrap = ByteBuffer.wrap(password);
@@ -119,18 +100,15 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
        
         try {
             if (OpenBSDBCrypt.checkPassword(hashed, array)) {
-                final List<String> roles = cfg.getAsList(credentials.getUsername() + ".roles", Collections.emptyList());
-                final Settings customAttributes = cfg.getAsSettings(credentials.getUsername() + ".attributes");
+                final List<String> roles = internalUsers.getRoles(credentials.getUsername());
 
-                if(customAttributes != null) {
-                    for(String attributeName: customAttributes.names()) {
-                        credentials.addAttribute("attr.internal."+attributeName, customAttributes.get(attributeName));
-                    }
+                for(final Map.Entry<String, String> attribute: internalUsers.getAttributes(credentials.getUsername()).entrySet()) {
+                    credentials.addAttribute("attr.internal."+attribute.getKey(), attribute.getValue());
                 }
 
                 return new User(credentials.getUsername(), roles, credentials);
             } else {
-                throw new ElasticsearchSecurityException("password does not match");
+                throw new ElasticsearchSecurityException("password does not match", RestStatus.UNAUTHORIZED);
             }
         } finally {
             Arrays.fill(wrap.array(), (byte)0);
@@ -144,18 +122,52 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
         return "internal";
     }
 
-    private Settings getConfigSettings() {
-        return configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_INTERNAL_USERS, false);
+    /**
+     * Build the index of the internal users once per configuration change, not on the authenticating threads
+     */
+    @Override
+    public void onChange(final Settings internalUsersSettings) {
+        if(internalUsersSettings != null) {
+            getInternalUsers(internalUsersSettings);
+        }
+    }
+
+    /**
+     * 
+     * @return the index of the current internal users configuration or null if it is not yet loaded
+     */
+    private InternalUsers getInternalUsers() {
+        final Settings cfg = configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_INTERNAL_USERS, false);
+        if (cfg == null) {
+            return null;
+        }
+
+        final InternalUsers _internalUsers = this.internalUsers;
+        if(_internalUsers != null && _internalUsers.getSettings() == cfg) {
+            return _internalUsers;
+        }
+
+        //not yet notified about the change, e.g. if the configuration was loaded on first access
+        return getInternalUsers(cfg);
+    }
+
+    private synchronized InternalUsers getInternalUsers(final Settings cfg) {
+        InternalUsers _internalUsers = this.internalUsers;
+        if(_internalUsers == null || _internalUsers.getSettings() != cfg) {
+            _internalUsers = new InternalUsers(cfg);
+            this.internalUsers = _internalUsers;
+        }
+        return _internalUsers;
     }
 
     @Override
     public void fillRoles(User user, AuthCredentials credentials) throws ElasticsearchSecurityException {
-        final Settings cfg = getConfigSettings();
-        if (cfg == null) {
+        final InternalUsers internalUsers = getInternalUsers();
+        if (internalUsers == null) {
             throw new ElasticsearchSecurityException("Internal authentication backend not configured. May be Search Guard is not initialized. See http://docs.search-guard.com/v6/sgadmin");
 
         }
-        final List<String> roles = cfg.getAsList(credentials.getUsername() + ".roles", Collections.emptyList());
+        final List<String> roles = internalUsers.getRoles(credentials.getUsername());
         if(roles != null && !roles.isEmpty() && user != null) {
             user.addRoles(roles);
         }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.auth.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Immutable index of the internal users configuration, so that users are found with a single hash lookup
+ * by their name or their alternative <code>username</code>, no matter if they exist or not.
+ * <p>
+ * Built once per internal users {@link Settings} instance.
+ */
+final class InternalUsers {
+
+    private final Settings settings;
+    private final Map<String, InternalUser> users;
+    //alternative username -> hash of the first entry (in name order) with this username, maybe null
+    private final Map<String, String> hashesByUsername;
+
+    InternalUsers(final Settings settings) {
+        this.settings = settings;
+
+        final Map<String, InternalUser> users = new HashMap<>();
+        final Map<String, String> hashesByUsername = new HashMap<>();
+
+        for(final String name: settings.names()) {
+            final String hash = settings.get(name + ".hash");
+            final List<String> roles = settings.getAsList(name + ".roles", Collections.emptyList());
+            final Settings customAttributes = settings.getAsSettings(name + ".attributes");
+            final Map<String, String> attributes;
+
+            if(customAttributes == null || customAttributes.isEmpty()) {
+                attributes = Collections.emptyMap();
+            } else {
+                attributes = new LinkedHashMap<>();
+                for(final String attributeName: customAttributes.names()) {
+                    attributes.put(attributeName, customAttributes.get(attributeName));
+                }
+            }
+
+            users.put(name, new InternalUser(hash, Collections.unmodifiableList(roles), attributes));
+
+            final String username = settings.get(name + ".username");
+            if(username != null && !hashesByUsername.containsKey(username)) {
+                hashesByUsername.put(username, hash);
+            }
+        }
+
+        this.users = users;
+        this.hashesByUsername = hashesByUsername;
+    }
+
+    Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     *
+     * @param name
+     * @return the hash of the user with this name or, if there is none, of the user with this alternative username, maybe null
+     */
+    String getHash(final String name) {
+        final InternalUser user = users.get(name);
+        if(user != null && user.hash != null) {
+            return user.hash;
+        }
+        return hashesByUsername.get(name);
+    }
+
+    /**
+     *
+     * @param name
+     * @return the roles of the user with exactly this name, never null
+     */
+    List<String> getRoles(final String name) {
+        final InternalUser user = users.get(name);
+        return user == null?Collections.emptyList():user.roles;
+    }
+
+    /**
+     *
+     * @param name
+     * @return the custom attributes of the user with exactly this name, never null
+     */
+    Map<String, String> getAttributes(final String name) {
+        final InternalUser user = users.get(name);
+        return user == null?Collections.emptyMap():user.attributes;
+    }
+
+    private static final class InternalUser {
+        private final String hash;
+        private final List<String> roles;
+        private final Map<String, String> attributes;
+
+        private InternalUser(final String hash, final List<String> roles, final Map<String, String> attributes) {
+            this.hash = hash;
+            this.roles = roles;
+            this.attributes = attributes;
+        }
+    }
+}
@@ -56,7 +56,9 @@ public class ComplianceConfig implements LicenseChangeListener {
     private final Logger log = LogManager.getLogger(getClass());
     private final Settings settings;
     private final Map<String, Set<String>> readEnabledFields = new HashMap<>(100);
-    private final List<String> watchedWriteIndices;
+    //compiled index and field patterns of readEnabledFields
+    private final Map<String, WildcardMatcher.Matcher> readEnabledMatchers = new HashMap<>(100);
+    private final WildcardMatcher.Matcher watchedWriteIndices;
     private DateTimeFormatter auditLogPattern = null;
     private String auditLogIndex = null;
     private final boolean logDiffsForWrite;
@@ -65,7 +67,7 @@ public class ComplianceConfig implements LicenseChangeListener {
     private final boolean logExternalConfig;
     private final boolean logInternalConfig;
     private final LoadingCache<String, Set<String>> cache;
-    private final Set<String> immutableIndicesPatterns;
+    private final WildcardMatcher.Matcher immutableIndicesPatterns;
     private final byte[] salt16;
     private final String searchguardIndex;
     private final IndexResolverReplacer irr;
@@ -83,13 +85,13 @@ public class ComplianceConfig implements LicenseChangeListener {
         final List<String> watchedReadFields = this.settings.getAsList(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_READ_WATCHED_FIELDS,
                 Collections.emptyList(), false);
 
-        watchedWriteIndices = settings.getAsList(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_WRITE_WATCHED_INDICES, Collections.emptyList());
+        watchedWriteIndices = WildcardMatcher.compileSet(settings.getAsList(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_WRITE_WATCHED_INDICES, Collections.emptyList()));
         logDiffsForWrite = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_WRITE_LOG_DIFFS, false);
         logWriteMetadataOnly = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_WRITE_METADATA_ONLY, false);
         logReadMetadataOnly = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_READ_METADATA_ONLY, false);
         logExternalConfig = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_EXTERNAL_CONFIG_ENABLED, false);
         logInternalConfig = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPLIANCE_HISTORY_INTERNAL_CONFIG_ENABLED, false);
-        immutableIndicesPatterns = new HashSet<String>(settings.getAsList(ConfigConstants.SEARCHGUARD_COMPLIANCE_IMMUTABLE_INDICES, Collections.emptyList()));
+        immutableIndicesPatterns = WildcardMatcher.compileSet(new HashSet<String>(settings.getAsList(ConfigConstants.SEARCHGUARD_COMPLIANCE_IMMUTABLE_INDICES, Collections.emptyList())));
         final String saltAsString = settings.get(ConfigConstants.SEARCHGUARD_COMPLIANCE_SALT, ConfigConstants.SEARCHGUARD_COMPLIANCE_SALT_DEAULT);
         final byte[] saltAsBytes = saltAsString.getBytes(StandardCharsets.UTF_8);
 
@@ -115,6 +117,13 @@ public class ComplianceConfig implements LicenseChangeListener {
             }
         }
 
+        for(Map.Entry<String, Set<String>> entry: readEnabledFields.entrySet()) {
+            readEnabledMatchers.put(entry.getKey(), WildcardMatcher.compile(entry.getKey()));
+            for(String fieldPattern: entry.getValue()) {
+                readEnabledMatchers.put(fieldPattern, WildcardMatcher.compile(fieldPattern));
+            }
+        }
+
         final String type = settings.get(ConfigConstants.SEARCHGUARD_AUDIT_TYPE_DEFAULT, null);
         if("internal_elasticsearch".equalsIgnoreCase(type)) {
             final String index = settings.get(ConfigConstants.SEARCHGUARD_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.SEARCHGUARD_AUDIT_ES_INDEX,"'sg6-auditlog-'YYYY.MM.dd");
@@ -187,7 +196,7 @@ public class ComplianceConfig implements LicenseChangeListener {
 
         final Set<String> tmp = new HashSet<String>(100);
         for(String indexPattern: readEnabledFields.keySet()) {
-            if(indexPattern != null && !indexPattern.isEmpty() && WildcardMatcher.match(indexPattern, index)) {
+            if(indexPattern != null && !indexPattern.isEmpty() && readEnabledMatchers.get(indexPattern).matches(index)) {
                 tmp.addAll(readEnabledFields.get(indexPattern));
             }
         }
@@ -222,7 +231,7 @@ public class ComplianceConfig implements LicenseChangeListener {
             }
         }
 
-        return WildcardMatcher.matchAny(watchedWriteIndices, index);
+        return watchedWriteIndices.matches(index);
     }
 
     //no patterns here as parameters
@@ -263,7 +272,12 @@ public class ComplianceConfig implements LicenseChangeListener {
                 return false;
             }
 
-            return WildcardMatcher.matchAny(fields, field);
+            for(String fieldPattern: fields) {
+                if(readEnabledMatchers.get(fieldPattern).matches(field)) {
+                    return true;
+                }
+            }
+            return false;
         } catch (ExecutionException e) {
             log.error(e);
             return true;
@@ -289,7 +303,7 @@ public class ComplianceConfig implements LicenseChangeListener {
             return false;
         }
         
-        if(immutableIndicesPatterns.isEmpty()) {
+        if(immutableIndicesPatterns == WildcardMatcher.Matcher.NONE) {
             return false;
         }
         
@@ -301,7 +315,7 @@ public class ComplianceConfig implements LicenseChangeListener {
         //assert allIndices.contains("*"):"no * in "+allIndices;
         //assert allIndices.contains(""):"no EMPTY in "+allIndices;
 
-        return WildcardMatcher.matchAny(immutableIndicesPatterns, allIndices);
+        return immutableIndicesPatterns.matchesAny(allIndices);
     }
 
     public byte[] getSalt16() {
@@ -17,6 +17,7 @@
 
 package com.floragunn.searchguard.configuration;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -38,8 +39,8 @@ public class AdminDNs {
 
     protected final Logger log = LogManager.getLogger(AdminDNs.class);
     private final Set<LdapName> adminDn = new HashSet<LdapName>();
-    private final ListMultimap<LdapName, String> allowedImpersonations = ArrayListMultimap.<LdapName, String> create();
-    private final ListMultimap<String, String> allowedRestImpersonations = ArrayListMultimap.<String, String> create();
+    private final ListMultimap<LdapName, WildcardMatcher.Matcher> allowedImpersonations = ArrayListMultimap.<LdapName, WildcardMatcher.Matcher> create();
+    private final ListMultimap<String, WildcardMatcher.Matcher> allowedRestImpersonations = ArrayListMultimap.<String, WildcardMatcher.Matcher> create();
     
     public AdminDNs(final Settings settings) {
 
@@ -60,7 +61,7 @@ public class AdminDNs {
         
         for (String dnString:impersonationDns.keySet()) {
             try {
-                allowedImpersonations.putAll(new LdapName(dnString), settings.getAsList(ConfigConstants.SEARCHGUARD_AUTHCZ_IMPERSONATION_DN+"."+dnString));
+                allowedImpersonations.putAll(new LdapName(dnString), Arrays.asList(WildcardMatcher.compile(settings.getAsList(ConfigConstants.SEARCHGUARD_AUTHCZ_IMPERSONATION_DN+"."+dnString))));
             } catch (final InvalidNameException e) {
                 log.error("Unable to parse allowedImpersonations dn {}",dnString, e);
             }
@@ -71,7 +72,7 @@ public class AdminDNs {
         final Settings impersonationUsersRest = settings.getByPrefix(ConfigConstants.SEARCHGUARD_AUTHCZ_REST_IMPERSONATION_USERS+".");
 
         for (String user:impersonationUsersRest.keySet()) {
-            allowedRestImpersonations.putAll(user, settings.getAsList(ConfigConstants.SEARCHGUARD_AUTHCZ_REST_IMPERSONATION_USERS+"."+user));
+            allowedRestImpersonations.putAll(user, Arrays.asList(WildcardMatcher.compile(settings.getAsList(ConfigConstants.SEARCHGUARD_AUTHCZ_REST_IMPERSONATION_USERS+"."+user))));
         }
         
         log.debug("Loaded {} impersonation users for REST {}",allowedRestImpersonations.size(), allowedRestImpersonations);
@@ -107,13 +108,22 @@ public class AdminDNs {
             return true;
         }
 
-        return WildcardMatcher.matchAny(this.allowedImpersonations.get(dn), impersonated);
+        return matchAny(this.allowedImpersonations.get(dn), impersonated);
     }
     
     public boolean isRestImpersonationAllowed(final String originalUser, final String impersonated) {
         if(originalUser == null) {
             return false;    
         }
-        return WildcardMatcher.matchAny(this.allowedRestImpersonations.get(originalUser), impersonated);
+        return matchAny(this.allowedRestImpersonations.get(originalUser), impersonated);
+    }
+
+    private static boolean matchAny(final List<WildcardMatcher.Matcher> matchers, final String candidate) {
+        for (WildcardMatcher.Matcher matcher: matchers) {
+            if (matcher.matches(candidate)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -81,4 +81,12 @@ public interface ConfigurationRepository {
      * @throws NullPointerException if specified configuration type is null or empty, or callback function is null
      */
     void subscribeOnChange(String configurationType, ConfigurationChangeListener listener);
+
+    /**
+     * Version of the currently active configuration. The version is increased after all listeners
+     * were notified about a configuration change, so it can be used to tag values derived from the configuration.
+     *
+     * @return monotonically increasing configuration version
+     */
+    long getConfigVersion();
 }
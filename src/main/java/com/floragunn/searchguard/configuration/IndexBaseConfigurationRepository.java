@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
@@ -88,6 +89,7 @@ public class IndexBaseConfigurationRepository implements ConfigurationRepository
     private final ComplianceConfig complianceConfig;
     private ThreadPool threadPool;
     private volatile SearchGuardLicense effectiveLicense;
+    private final AtomicLong configVersion = new AtomicLong();
 
     private IndexBaseConfigurationRepository(Settings settings, final Path configPath, ThreadPool threadPool, 
             Client client, ClusterService clusterService, AuditLog auditLog, ComplianceConfig complianceConfig) {
@@ -327,6 +329,7 @@ public class IndexBaseConfigurationRepository implements ConfigurationRepository
         typeToConfig.clear();
         typeToConfig.putAll(loaded);
         notifyAboutChanges(loaded);
+        configVersion.incrementAndGet();
 
         final SearchGuardLicense sgLicense = getLicense();
         
@@ -366,6 +369,11 @@ public class IndexBaseConfigurationRepository implements ConfigurationRepository
         configTypeToChancheListener.put(configurationType, listener);
     }
     
+    @Override
+    public long getConfigVersion() {
+        return configVersion.get();
+    }
+
     //@Override
     public synchronized void subscribeOnLicenseChange(LicenseChangeListener licenseChangeListener) {
         if(licenseChangeListener != null) {
@@ -20,6 +20,7 @@ package com.floragunn.searchguard.configuration;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -28,12 +29,14 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchSecurityException;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
 import org.elasticsearch.action.RealtimeRequest;
 import org.elasticsearch.action.admin.cluster.snapshots.restore.RestoreSnapshotRequest;
 import org.elasticsearch.action.admin.indices.alias.IndicesAliasesAction;
@@ -52,11 +55,10 @@ import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchScrollAction;
 import org.elasticsearch.action.termvectors.MultiTermVectorsAction;
 import org.elasticsearch.action.update.UpdateAction;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.AliasMetaData;
-import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.service.ClusterService;
-import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
@@ -71,15 +73,23 @@ import org.elasticsearch.tasks.Task;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import com.floragunn.searchguard.auditlog.AuditLog;
+import com.floragunn.searchguard.resolver.AliasSnapshot;
 import com.floragunn.searchguard.resolver.IndexResolverReplacer;
 import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
 import com.floragunn.searchguard.sgconf.ConfigModel;
 import com.floragunn.searchguard.sgconf.ConfigModel.SgRoles;
+import com.floragunn.searchguard.sgconf.DynamicConfig;
+import com.floragunn.searchguard.sgconf.DynamicConfigModel;
+import com.floragunn.searchguard.sgconf.RolesMappingModel;
+import com.floragunn.searchguard.sgconf.RolesMappingModel.SgRoleMappings;
 import com.floragunn.searchguard.support.Base64Helper;
+import com.floragunn.searchguard.support.CacheStatsInfo;
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.support.SnapshotRestoreHelper;
 import com.floragunn.searchguard.support.WildcardMatcher;
 import com.floragunn.searchguard.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 public class PrivilegesEvaluator {
 
@@ -89,7 +99,7 @@ public class PrivilegesEvaluator {
     private final ClusterService clusterService;
     private final ActionGroupHolder ah;
     private final IndexNameExpressionResolver resolver;
-    private final String[] sgDeniedActionPatterns;
+    private final WildcardMatcher.Matcher sgDeniedActionPatterns;
     private final AuditLog auditLog;
     private ThreadContext threadContext;
     //private final static IndicesOptions DEFAULT_INDICES_OPTIONS = IndicesOptions.lenientExpandOpen();
@@ -105,7 +115,13 @@ public class PrivilegesEvaluator {
     private final ClusterInfoHolder clusterInfoHolder;
     //private final boolean typeSecurityDisabled = false;
     private final ConfigModel configModel;
+    private final RolesMappingModel rolesMappingModel;
+    private final DynamicConfigModel dynamicConfigModel;
     private final IndexResolverReplacer irr;
+    private final Cache<PrincipalKey, EffectivePermissions> effectivePermissionsCache;
+    private final Cache<DlsFlsKey, DlsFlsMaskedFields> dlsFlsCache;
+    //null if disabled
+    private final Cache<DecisionKey, Boolean> decisionCache;
     
     private static final String[] READ_ACTIONS = new String[]{
             "indices:data/read/msearch",
@@ -120,9 +136,10 @@ public class PrivilegesEvaluator {
 
     public PrivilegesEvaluator(final ClusterService clusterService, final ThreadPool threadPool, final ConfigurationRepository configurationRepository, final ActionGroupHolder ah,
             final IndexNameExpressionResolver resolver, AuditLog auditLog, final Settings settings, final PrivilegesInterceptor privilegesInterceptor,
-            final ClusterInfoHolder clusterInfoHolder) {
+            final ClusterInfoHolder clusterInfoHolder, final DynamicConfigModel dynamicConfigModel) {
 
         super();
+        this.dynamicConfigModel = dynamicConfigModel;
         this.configurationRepository = configurationRepository;
         this.clusterService = clusterService;
         this.ah = ah;
@@ -152,11 +169,33 @@ public class PrivilegesEvaluator {
         //deniedActionPatternsList.add("indices:admin/settings/update");
         //deniedActionPatternsList.add("indices:admin/upgrade");
 
-        sgDeniedActionPatterns = sgIndexdeniedActionPatternsList.toArray(new String[0]);
+        sgDeniedActionPatterns = WildcardMatcher.compileSet(sgIndexdeniedActionPatternsList);
         this.clusterInfoHolder = clusterInfoHolder;
         //this.typeSecurityDisabled = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_DISABLE_TYPE_SECURITY, false);
-        configModel = new ConfigModel(ah, configurationRepository);
-        irr = new IndexResolverReplacer(resolver, clusterService, clusterInfoHolder);
+        irr = new IndexResolverReplacer(resolver, clusterService, clusterInfoHolder, settings);
+        configModel = new ConfigModel(ah, configurationRepository, irr.getAliasSnapshots());
+        configurationRepository.subscribeOnChange(ConfigConstants.CONFIGNAME_ROLES, configModel);
+        configurationRepository.subscribeOnChange(ConfigConstants.CONFIGNAME_ACTION_GROUPS, configModel);
+        rolesMappingModel = new RolesMappingModel(configurationRepository);
+        configurationRepository.subscribeOnChange(ConfigConstants.CONFIGNAME_ROLES_MAPPING, rolesMappingModel);
+        effectivePermissionsCache = CacheBuilder.newBuilder()
+                .maximumSize(settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_EFFECTIVE_PERMISSIONS_MAX_SIZE, 10000))
+                .recordStats()
+                .build();
+        dlsFlsCache = CacheBuilder.newBuilder()
+                .maximumSize(settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_DLS_FLS_MAX_SIZE, 10000))
+                .recordStats()
+                .build();
+
+        final int decisionCacheSize = settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_DECISIONS_MAX_SIZE, 0);
+        if(decisionCacheSize > 0) {
+            decisionCache = CacheBuilder.newBuilder()
+                    .maximumSize(decisionCacheSize)
+                    .recordStats()
+                    .build();
+        } else {
+            decisionCache = null;
+        }
     }
 
     private Settings getRolesSettings() {
@@ -171,10 +210,116 @@ public class PrivilegesEvaluator {
         return configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_CONFIG, false);
     }
 
-    //TODO: optimize, recreate only if changed
-    private SgRoles getSgRoles(final User user, final TransportAddress caller) {
-        Set<String> roles = mapSgRoles(user, caller);
-        return configModel.load().filter(roles);
+    private EffectivePermissions getEffectivePermissions(final User user, final TransportAddress caller) {
+        //read the versions first so that a concurrent change can only make the entry stale
+        final long configVersion = configurationRepository.getConfigVersion();
+        final long metaDataVersion = clusterService.state().metaData().version();
+        final SgRoleMappings rolesMapping = rolesMappingModel.getSgRoleMappings();
+        //the caller address only matters if there are hosts based mappings
+        final PrincipalKey key = new PrincipalKey(user, rolesMapping != null && rolesMapping.hasHostsRules()?caller:null);
+
+        EffectivePermissions effectivePermissions = effectivePermissionsCache.getIfPresent(key);
+
+        if(effectivePermissions == null || !effectivePermissions.isCurrent(configVersion, metaDataVersion)) {
+
+            if(log.isDebugEnabled()) {
+                log.debug("Compute effective permissions for {} ({})", user, effectivePermissions == null?"not cached":"stale");
+            }
+
+            final Set<String> mappedRoles = mapSgRoles(user, caller);
+            final SgRoles sgRoles = configModel.getSgRoles().filter(mappedRoles);
+            effectivePermissions = new EffectivePermissions(configVersion, metaDataVersion, mappedRoles, sgRoles,
+                    mapTenants(user, mappedRoles),
+                    getDlsFlsMaskedFields(user, mappedRoles, sgRoles, configVersion, metaDataVersion));
+            effectivePermissionsCache.put(key, effectivePermissions);
+        }
+
+        return effectivePermissions;
+    }
+
+    //shared by all principals with the same roles (and the same user attributes if they are referenced)
+    private DlsFlsMaskedFields getDlsFlsMaskedFields(final User user, final Set<String> mappedRoles, final SgRoles sgRoles,
+            final long configVersion, final long metaDataVersion) {
+
+        if(!sgRoles.hasDlsFlsOrMaskedFields()) {
+            return DlsFlsMaskedFields.NONE;
+        }
+
+        final DlsFlsKey key = new DlsFlsKey(mappedRoles, sgRoles.hasDlsFlsOrMaskedFieldsUserTemplates()?user:null);
+        DlsFlsMaskedFields dlsFlsMaskedFields = dlsFlsCache.getIfPresent(key);
+
+        if(dlsFlsMaskedFields == null || !dlsFlsMaskedFields.isCurrent(configVersion, metaDataVersion)) {
+            final Tuple<Map<String, Set<String>>, Map<String, Set<String>>> dlsFls = sgRoles.getDlsFls(user, resolver, clusterService);
+            dlsFlsMaskedFields = new DlsFlsMaskedFields(configVersion, metaDataVersion, dlsFls.v1(), dlsFls.v2(),
+                    sgRoles.getMaskedFields(user, resolver, clusterService));
+            dlsFlsCache.put(key, dlsFlsMaskedFields);
+        }
+
+        return dlsFlsMaskedFields;
+    }
+
+    private boolean impliesIndexPermissions(final EffectivePermissions effectivePermissions, final User user, final Resolved requestedResolved,
+            final Set<String> allIndexPermsRequired, final String[] allIndexPermsRequiredA, final boolean multiRolespan) {
+
+        final SgRoles sgRoles = effectivePermissions.getSgRoles();
+
+        if(decisionCache == null) {
+            return impliesIndexPermissions(sgRoles, user, requestedResolved, allIndexPermsRequiredA, multiRolespan);
+        }
+
+        final DecisionKey key = new DecisionKey(effectivePermissions, sgRoles.hasIndexPatternUserTemplates()?user:null,
+                allIndexPermsRequired, requestedResolved, multiRolespan);
+
+        Boolean permGiven = decisionCache.getIfPresent(key);
+
+        if(permGiven == null) {
+            permGiven = impliesIndexPermissions(sgRoles, user, requestedResolved, allIndexPermsRequiredA, multiRolespan);
+            decisionCache.put(key, permGiven);
+        } else if(log.isDebugEnabled()) {
+            log.debug("Cached decision {} for {}", permGiven, requestedResolved);
+        }
+
+        return permGiven;
+    }
+
+    private boolean impliesIndexPermissions(final SgRoles sgRoles, final User user, final Resolved requestedResolved,
+            final String[] allIndexPermsRequiredA, final boolean multiRolespan) {
+        if (multiRolespan) {
+            return sgRoles.impliesTypePermGlobal(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
+        }  else {
+            return sgRoles.get(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
+        }
+    }
+
+    /**
+     *
+     * @return hit and miss counts of the decision cache or null if the cache is disabled
+     */
+    public CacheStatsInfo getDecisionCacheStats() {
+        return CacheStatsInfo.of(decisionCache);
+    }
+
+    /**
+     *
+     * @return the stats of the privileges evaluation caches by name
+     */
+    public Map<String, CacheStatsInfo> getCacheStats() {
+        final Map<String, CacheStatsInfo> stats = new TreeMap<>();
+        stats.put("effective_permissions", CacheStatsInfo.of(effectivePermissionsCache));
+        stats.put("dls_fls", CacheStatsInfo.of(dlsFlsCache));
+        if(decisionCache != null) {
+            stats.put("decisions", CacheStatsInfo.of(decisionCache));
+        }
+        final CacheStatsInfo resolvedCacheStats = irr.getResolvedCacheStats();
+        if(resolvedCacheStats != null) {
+            stats.put("resolved_indices", resolvedCacheStats);
+        }
+        return stats;
+    }
+
+    //the header must either be the one we would attach or deserialize to the same content
+    private static boolean headerMatches(final String header, final String expectedHeader, final Map<String, Set<String>> expected) {
+        return header.equals(expectedHeader) || expected.equals(Base64Helper.deserializeObject(header));
     }
 
 
@@ -211,6 +356,211 @@ public class PrivilegesEvaluator {
         
     }
 
+    private static final class PrincipalKey {
+        private final String name;
+        private final Set<String> backendRoles;
+        private final Map<String, String> attributes;
+        private final String callerAddress;
+        private final int hashCode;
+
+        private PrincipalKey(final User user, final TransportAddress caller) {
+            this.name = user==null?null:user.getName();
+            this.backendRoles = user==null?Collections.emptySet():new HashSet<>(user.getRoles());
+            this.attributes = user==null?Collections.emptyMap():new HashMap<>(user.getCustomAttributesMap());
+            this.callerAddress = caller==null?null:caller.getAddress();
+            this.hashCode = Objects.hash(name, backendRoles, attributes, callerAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            PrincipalKey other = (PrincipalKey) obj;
+            return hashCode == other.hashCode
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(callerAddress, other.callerAddress)
+                    && backendRoles.equals(other.backendRoles)
+                    && attributes.equals(other.attributes);
+        }
+    }
+
+    /**
+     * Everything we can precompute for a principal, valid as long as neither
+     * the config nor the cluster metadata changes. Never modify the content.
+     */
+    private static final class EffectivePermissions {
+        private final long configVersion;
+        private final long metaDataVersion;
+        private final Set<String> mappedRoles;
+        private final SgRoles sgRoles;
+        private final Map<String, Boolean> tenants;
+        private final DlsFlsMaskedFields dlsFlsMaskedFields;
+
+        private EffectivePermissions(long configVersion, long metaDataVersion, Set<String> mappedRoles, SgRoles sgRoles,
+                Map<String, Boolean> tenants, DlsFlsMaskedFields dlsFlsMaskedFields) {
+            this.configVersion = configVersion;
+            this.metaDataVersion = metaDataVersion;
+            this.mappedRoles = mappedRoles;
+            this.sgRoles = sgRoles;
+            this.tenants = tenants;
+            this.dlsFlsMaskedFields = dlsFlsMaskedFields;
+        }
+
+        private boolean isCurrent(long configVersion, long metaDataVersion) {
+            return this.configVersion == configVersion && this.metaDataVersion == metaDataVersion;
+        }
+
+        public Set<String> getMappedRoles() {
+            return mappedRoles;
+        }
+
+        public SgRoles getSgRoles() {
+            return sgRoles;
+        }
+
+        public Map<String, Boolean> getTenants() {
+            return tenants;
+        }
+
+        public DlsFlsMaskedFields getDlsFlsMaskedFields() {
+            return dlsFlsMaskedFields;
+        }
+    }
+
+    private static final class DlsFlsKey {
+        private final Set<String> sgRoles;
+        private final String name;
+        private final Map<String, String> attributes;
+        private final int hashCode;
+
+        private DlsFlsKey(final Set<String> sgRoles, final User user) {
+            this.sgRoles = sgRoles;
+            this.name = user==null?null:user.getName();
+            this.attributes = user==null?Collections.emptyMap():new HashMap<>(user.getCustomAttributesMap());
+            this.hashCode = Objects.hash(sgRoles, name, attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            DlsFlsKey other = (DlsFlsKey) obj;
+            return hashCode == other.hashCode
+                    && Objects.equals(name, other.name)
+                    && sgRoles.equals(other.sgRoles)
+                    && attributes.equals(other.attributes);
+        }
+    }
+
+    /**
+     * Role set, user (only if index patterns reference user attributes), actions and requested
+     * indices plus the config and metadata versions so that entries never outlive a change.
+     */
+    private static final class DecisionKey {
+        private final long configVersion;
+        private final long metaDataVersion;
+        private final Set<String> sgRoles;
+        private final String name;
+        private final Map<String, String> attributes;
+        private final Set<String> actions;
+        private final Resolved resolved;
+        private final boolean multiRolespan;
+        private final int hashCode;
+
+        private DecisionKey(final EffectivePermissions effectivePermissions, final User user, final Set<String> actions,
+                final Resolved resolved, final boolean multiRolespan) {
+            this.configVersion = effectivePermissions.configVersion;
+            this.metaDataVersion = effectivePermissions.metaDataVersion;
+            this.sgRoles = effectivePermissions.getMappedRoles();
+            this.name = user==null?null:user.getName();
+            this.attributes = user==null?Collections.emptyMap():new HashMap<>(user.getCustomAttributesMap());
+            this.actions = actions;
+            this.resolved = resolved;
+            this.multiRolespan = multiRolespan;
+            this.hashCode = Objects.hash(configVersion, metaDataVersion, sgRoles, name, attributes, actions, resolved, multiRolespan);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            DecisionKey other = (DecisionKey) obj;
+            return hashCode == other.hashCode
+                    && configVersion == other.configVersion
+                    && metaDataVersion == other.metaDataVersion
+                    && multiRolespan == other.multiRolespan
+                    && Objects.equals(name, other.name)
+                    && sgRoles.equals(other.sgRoles)
+                    && actions.equals(other.actions)
+                    && resolved.equals(other.resolved)
+                    && attributes.equals(other.attributes);
+        }
+    }
+
+    /**
+     * DLS queries, FLS fields and masked fields together with their serialized header form.
+     * Never modify the content.
+     */
+    private static final class DlsFlsMaskedFields {
+        private static final DlsFlsMaskedFields NONE = new DlsFlsMaskedFields(-1, -1, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+        private final long configVersion;
+        private final long metaDataVersion;
+        private final Map<String, Set<String>> dlsQueries;
+        private final Map<String, Set<String>> flsFields;
+        private final Map<String, Set<String>> maskedFields;
+        private final String dlsQueriesHeader;
+        private final String flsFieldsHeader;
+        private final String maskedFieldsHeader;
+
+        private DlsFlsMaskedFields(long configVersion, long metaDataVersion, Map<String, Set<String>> dlsQueries,
+                Map<String, Set<String>> flsFields, Map<String, Set<String>> maskedFields) {
+            this.configVersion = configVersion;
+            this.metaDataVersion = metaDataVersion;
+            this.dlsQueries = dlsQueries;
+            this.flsFields = flsFields;
+            this.maskedFields = maskedFields;
+            this.dlsQueriesHeader = serialize(dlsQueries);
+            this.flsFieldsHeader = serialize(flsFields);
+            this.maskedFieldsHeader = serialize(maskedFields);
+        }
+
+        private static String serialize(Map<String, Set<String>> map) {
+            return map.isEmpty()?null:Base64Helper.serializeObject((Serializable) map);
+        }
+
+        private boolean isCurrent(long configVersion, long metaDataVersion) {
+            return this.configVersion == configVersion && this.metaDataVersion == metaDataVersion;
+        }
+    }
+
     public PrivEvalResponse evaluate(final User user, String action0, final ActionRequest request, Task task) {
 
         if (!isInitialized()) {
@@ -222,7 +572,9 @@ public class PrivilegesEvaluator {
         }
 
         final TransportAddress caller = Objects.requireNonNull((TransportAddress) this.threadContext.getTransient(ConfigConstants.SG_REMOTE_ADDRESS));
-        final SgRoles sgRoles = getSgRoles(user, caller);
+        final EffectivePermissions effectivePermissions = getEffectivePermissions(user, caller);
+        final SgRoles sgRoles = effectivePermissions.getSgRoles();
+        final DynamicConfig dynamicConfig = dynamicConfigModel.getDynamicConfig();
 
         final PrivEvalResponse presponse = new PrivEvalResponse();
 
@@ -239,11 +591,13 @@ public class PrivilegesEvaluator {
         }
 
         //maskedFields
-        final Map<String, Set<String>> maskedFieldsMap = sgRoles.getMaskedFields(user, resolver, clusterService);
+        final DlsFlsMaskedFields dlsFlsMaskedFields = effectivePermissions.getDlsFlsMaskedFields();
+        final Map<String, Set<String>> maskedFieldsMap = dlsFlsMaskedFields.maskedFields;
         
         if(maskedFieldsMap != null && !maskedFieldsMap.isEmpty()) {
-            if(this.threadContext.getHeader(ConfigConstants.SG_MASKED_FIELD_HEADER) != null) {
-                if(!maskedFieldsMap.equals(Base64Helper.deserializeObject(this.threadContext.getHeader(ConfigConstants.SG_MASKED_FIELD_HEADER)))) {
+            final String maskedFieldsHeader = this.threadContext.getHeader(ConfigConstants.SG_MASKED_FIELD_HEADER);
+            if(maskedFieldsHeader != null) {
+                if(!headerMatches(maskedFieldsHeader, dlsFlsMaskedFields.maskedFieldsHeader, maskedFieldsMap)) {
                     throw new ElasticsearchSecurityException(ConfigConstants.SG_MASKED_FIELD_HEADER+" does not match (SG 901D)");
                 } else {
                     if(log.isDebugEnabled()) {
@@ -251,7 +605,7 @@ public class PrivilegesEvaluator {
                     }
                 }
             } else {
-                this.threadContext.putHeader(ConfigConstants.SG_MASKED_FIELD_HEADER, Base64Helper.serializeObject((Serializable) maskedFieldsMap));
+                this.threadContext.putHeader(ConfigConstants.SG_MASKED_FIELD_HEADER, dlsFlsMaskedFields.maskedFieldsHeader);
                 if(log.isDebugEnabled()) {
                     log.debug("attach masked fields info: {}", maskedFieldsMap);
                 }
@@ -260,18 +614,18 @@ public class PrivilegesEvaluator {
 
         //attach dls/fls map if not already done
         //TODO do this only if enterprise module are loaded
-        final Tuple<Map<String, Set<String>>, Map<String, Set<String>>> dlsFls = sgRoles.getDlsFls(user, resolver, clusterService);
-        final Map<String,Set<String>> dlsQueries = dlsFls.v1();
-        final Map<String,Set<String>> flsFields = dlsFls.v2();
+        final Map<String,Set<String>> dlsQueries = dlsFlsMaskedFields.dlsQueries;
+        final Map<String,Set<String>> flsFields = dlsFlsMaskedFields.flsFields;
 
         if(!dlsQueries.isEmpty()) {
 
-            if(this.threadContext.getHeader(ConfigConstants.SG_DLS_QUERY_HEADER) != null) {
-                if(!dlsQueries.equals(Base64Helper.deserializeObject(this.threadContext.getHeader(ConfigConstants.SG_DLS_QUERY_HEADER)))) {
+            final String dlsQueriesHeader = this.threadContext.getHeader(ConfigConstants.SG_DLS_QUERY_HEADER);
+            if(dlsQueriesHeader != null) {
+                if(!headerMatches(dlsQueriesHeader, dlsFlsMaskedFields.dlsQueriesHeader, dlsQueries)) {
                     throw new ElasticsearchSecurityException(ConfigConstants.SG_DLS_QUERY_HEADER+" does not match (SG 900D)");
                 }
             } else {
-                this.threadContext.putHeader(ConfigConstants.SG_DLS_QUERY_HEADER, Base64Helper.serializeObject((Serializable) dlsQueries));
+                this.threadContext.putHeader(ConfigConstants.SG_DLS_QUERY_HEADER, dlsFlsMaskedFields.dlsQueriesHeader);
                 if(log.isDebugEnabled()) {
                     log.debug("attach DLS info: {}", dlsQueries);
                 }
@@ -292,8 +646,9 @@ public class PrivilegesEvaluator {
 
         if(!flsFields.isEmpty()) {
 
-            if(this.threadContext.getHeader(ConfigConstants.SG_FLS_FIELDS_HEADER) != null) {
-                if(!flsFields.equals(Base64Helper.deserializeObject(this.threadContext.getHeader(ConfigConstants.SG_FLS_FIELDS_HEADER)))) {
+            final String flsFieldsHeader = this.threadContext.getHeader(ConfigConstants.SG_FLS_FIELDS_HEADER);
+            if(flsFieldsHeader != null) {
+                if(!headerMatches(flsFieldsHeader, dlsFlsMaskedFields.flsFieldsHeader, flsFields)) {
                     throw new ElasticsearchSecurityException(ConfigConstants.SG_FLS_FIELDS_HEADER+" does not match (SG 901D)");
                 } else {
                     if(log.isDebugEnabled()) {
@@ -301,7 +656,7 @@ public class PrivilegesEvaluator {
                     }
                 }
             } else {
-                this.threadContext.putHeader(ConfigConstants.SG_FLS_FIELDS_HEADER, Base64Helper.serializeObject((Serializable) flsFields));
+                this.threadContext.putHeader(ConfigConstants.SG_FLS_FIELDS_HEADER, dlsFlsMaskedFields.flsFieldsHeader);
                 if(log.isDebugEnabled()) {
                     log.debug("attach FLS info: {}", flsFields);
                 }
@@ -360,7 +715,7 @@ public class PrivilegesEvaluator {
         }
 
         if (requestedResolved.getAllIndices().contains(searchguardIndex)
-                && WildcardMatcher.matchAny(sgDeniedActionPatterns, action0)) {
+                && sgDeniedActionPatterns.matches(action0)) {
             auditLog.logSgIndexAttempt(request, action0, task);
             log.warn(action0 + " for '{}' index is not allowed for a regular user", searchguardIndex);
             presponse.allowed = false;
@@ -369,7 +724,7 @@ public class PrivilegesEvaluator {
 
         //TODO: newpeval: check if isAll() is all (contains("_all" or "*"))
         if (requestedResolved.isAll()
-                && WildcardMatcher.matchAny(sgDeniedActionPatterns, action0)) {
+                && sgDeniedActionPatterns.matches(action0)) {
             auditLog.logSgIndexAttempt(request, action0, task);
             log.warn(action0 + " for '_all' indices is not allowed for a regular user");
             presponse.allowed = false;
@@ -394,9 +749,7 @@ public class PrivilegesEvaluator {
             }
         }
 
-        final boolean dnfofEnabled =
-                getConfigSettings().getAsBoolean("searchguard.dynamic.kibana.do_not_fail_on_forbidden", false)
-                || getConfigSettings().getAsBoolean("searchguard.dynamic.do_not_fail_on_forbidden", false);
+        final boolean dnfofEnabled = dynamicConfig.isDnfofEnabled();
         
         if(log.isTraceEnabled()) {
             log.trace("dnfof enabled? {}", dnfofEnabled);
@@ -466,7 +819,7 @@ public class PrivilegesEvaluator {
                                && ab.getSubAggregations().isEmpty()) {
 
                            
-                           final Set<String> allPermittedIndices = getSgRoles(user, caller).getAllPermittedIndices(user, READ_ACTIONS, resolver, clusterService);
+                           final Set<String> allPermittedIndices = sgRoles.getAllPermittedIndices(user, READ_ACTIONS, resolver, clusterService);
                            if(allPermittedIndices == null || allPermittedIndices.isEmpty()) {
                                sr.source().query(NONE_QUERY);
                            } else {
@@ -493,7 +846,7 @@ public class PrivilegesEvaluator {
         presponse.missingPrivileges.clear();
         presponse.missingPrivileges.addAll(allIndexPermsRequired);
 
-        final Settings config = getConfigSettings();
+        final Settings config = dynamicConfig.getSettings();
 
         if (log.isDebugEnabled()) {
             log.debug("requested resolved indextypes: {}", requestedResolved);
@@ -508,7 +861,7 @@ public class PrivilegesEvaluator {
 
         if(privilegesInterceptor.getClass() != PrivilegesInterceptor.class) {
 
-            final Boolean replaceResult = privilegesInterceptor.replaceKibanaIndex(request, action0, user, config, requestedResolved.getAllIndices(), mapTenants(user, caller));
+            final Boolean replaceResult = privilegesInterceptor.replaceKibanaIndex(request, action0, user, config, requestedResolved.getAllIndices(), effectivePermissions.getTenants());
 
             if(log.isDebugEnabled()) {
                 log.debug("Result from privileges interceptor: {}", replaceResult);
@@ -545,14 +898,8 @@ public class PrivilegesEvaluator {
 
 
         //not bulk, mget, etc request here
-        boolean permGiven = false;
-
-        if (config.getAsBoolean("searchguard.dynamic.multi_rolespan_enabled", false)) {
-            permGiven = sgRoles.impliesTypePermGlobal(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
-        }  else {
-            permGiven = sgRoles.get(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
-
-        }
+        final boolean permGiven = impliesIndexPermissions(effectivePermissions, user, requestedResolved, allIndexPermsRequired, allIndexPermsRequiredA,
+                dynamicConfig.isMultiRolespanEnabled());
 
          if (!permGiven) {
             log.info("No {}-level perm match for {} {} [Action [{}]] [RolesChecked {}]", "index" , user, requestedResolved, action0, sgRoles.getRoles().stream().map(r->r.getName()).toArray());
@@ -575,7 +922,7 @@ public class PrivilegesEvaluator {
     }
     public Set<String> mapSgRoles(final User user, final TransportAddress caller) {
 
-        final Settings rolesMapping = getRolesMappingSettings();
+        final SgRoleMappings rolesMapping = rolesMappingModel.getSgRoleMappings();
         final Set<String> sgRoles = new TreeSet<String>();
 
         if(user == null) {
@@ -592,62 +939,17 @@ public class PrivilegesEvaluator {
 
         if(rolesMapping != null && ((rolesMappingResolution == ConfigConstants.RolesMappingResolution.BOTH
                 || rolesMappingResolution == ConfigConstants.RolesMappingResolution.MAPPING_ONLY))) {
-            for (final String roleMap : rolesMapping.names()) {
-                final Settings roleMapSettings = rolesMapping.getByPrefix(roleMap);
-
-                if (WildcardMatcher.allPatternsMatched(roleMapSettings.getAsList(".and_backendroles", Collections.emptyList()).toArray(new String[0]), user.getRoles().toArray(new String[0]))) {
-                    sgRoles.add(roleMap);
-                    continue;
-                }
 
-                if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".backendroles", Collections.emptyList()).toArray(new String[0]), user.getRoles().toArray(new String[0]))) {
-                    sgRoles.add(roleMap);
-                    continue;
-                }
-
-                if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".users"), user.getName())) {
-                    sgRoles.add(roleMap);
-                    continue;
-                }
-                
-                if(caller != null && log.isTraceEnabled()) {
-                    log.trace("caller (getAddress()) is {}", caller.getAddress());
-                    log.trace("caller unresolved? {}", caller.address().isUnresolved());
-                    log.trace("caller inner? {}", caller.address().getAddress()==null?"<unresolved>":caller.address().getAddress().toString());
-                    log.trace("caller (getHostString()) is {}", caller.address().getHostString());
-                    log.trace("caller (getHostName(), dns) is {}", caller.address().getHostName()); //reverse lookup
-                }
-                
-                if(caller != null) {
-                    //IPV4 or IPv6 (compressed and without scope identifiers)
-                    final String ipAddress = caller.getAddress();
-                    if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".hosts"), ipAddress)) {
-                        sgRoles.add(roleMap);
-                        continue;
-                    }
-    
-                    final String hostResolverMode = getConfigSettings().get("searchguard.dynamic.hosts_resolver_mode","ip-only");
-                    
-                    if(caller.address() != null && (hostResolverMode.equalsIgnoreCase("ip-hostname") || hostResolverMode.equalsIgnoreCase("ip-hostname-lookup"))){
-                        final String hostName = caller.address().getHostString();
-        
-                        if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".hosts"), hostName)) {
-                            sgRoles.add(roleMap);
-                            continue;
-                        }
-                    }
-                    
-                    if(caller.address() != null && hostResolverMode.equalsIgnoreCase("ip-hostname-lookup")){
-    
-                        final String resolvedHostName = caller.address().getHostName();
-             
-                        if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".hosts"), resolvedHostName)) {
-                            sgRoles.add(roleMap);
-                            continue;
-                        }
-                    }
-                }
+            if(caller != null && log.isTraceEnabled()) {
+                log.trace("caller (getAddress()) is {}", caller.getAddress());
+                log.trace("caller unresolved? {}", caller.address().isUnresolved());
+                log.trace("caller inner? {}", caller.address().getAddress()==null?"<unresolved>":caller.address().getAddress().toString());
+                log.trace("caller (getHostString()) is {}", caller.address().getHostString());
+                log.trace("caller (getHostName(), dns) is {}", caller.address().getHostName()); //reverse lookup
             }
+
+            final String hostResolverMode = rolesMapping.hasHostsRules()?dynamicConfigModel.getDynamicConfig().getHostsResolverMode():"ip-only";
+            rolesMapping.map(user, caller, hostResolverMode, sgRoles);
         }
 
         return Collections.unmodifiableSet(sgRoles);
@@ -660,10 +962,19 @@ public class PrivilegesEvaluator {
             return Collections.emptyMap();
         }
 
+        return mapTenants(user, mapSgRoles(user, caller));
+    }
+
+    private Map<String, Boolean> mapTenants(final User user, final Set<String> mappedSgRoles) {
+
+        if(user == null) {
+            return Collections.emptyMap();
+        }
+
         final Map<String, Boolean> result = new HashMap<>();
         result.put(user.getName(), true);
 
-        for(String sgRole: mapSgRoles(user, caller)) {
+        for(String sgRole: mappedSgRoles) {
             Settings tenants = getRolesSettings().getByPrefix(sgRole+".tenants.");
 
             if(tenants != null) {
@@ -692,20 +1003,20 @@ public class PrivilegesEvaluator {
 
     public boolean multitenancyEnabled() {
         return privilegesInterceptor.getClass() != PrivilegesInterceptor.class
-                && getConfigSettings().getAsBoolean("searchguard.dynamic.kibana.multitenancy_enabled", true);
+                && dynamicConfigModel.getDynamicConfig().isKibanaMultitenancyEnabled();
     }
 
     public boolean notFailOnForbiddenEnabled() {
         return privilegesInterceptor.getClass() != PrivilegesInterceptor.class
-                && getConfigSettings().getAsBoolean("searchguard.dynamic.kibana.do_not_fail_on_forbidden", false);
+                && dynamicConfigModel.getDynamicConfig().isKibanaDoNotFailOnForbidden();
     }
 
     public String kibanaIndex() {
-        return getConfigSettings().get("searchguard.dynamic.kibana.index",".kibana");
+        return dynamicConfigModel.getDynamicConfig().getKibanaIndex();
     }
 
     public String kibanaServerUsername() {
-        return getConfigSettings().get("searchguard.dynamic.kibana.server_username","kibanaserver");
+        return dynamicConfigModel.getDynamicConfig().getKibanaServerUsername();
     }
 
     private Set<String> evaluateAdditionalIndexPermissions(final ActionRequest request, final String originalAction) {
@@ -718,8 +1029,16 @@ public class PrivilegesEvaluator {
 
         if (request instanceof BulkShardRequest) {
             BulkShardRequest bsr = (BulkShardRequest) request;
+            //the required permissions only depend on the distinct op types
+            final Set<OpType> opTypes = EnumSet.noneOf(OpType.class);
             for (BulkItemRequest bir : bsr.items()) {
-                switch (bir.request().opType()) {
+                if(opTypes.add(bir.request().opType()) && opTypes.size() == OpType.values().length) {
+                    break;
+                }
+            }
+
+            for (OpType opType : opTypes) {
+                switch (opType) {
                 case CREATE:
                     additionalPermissionsRequired.add(IndexAction.NAME);
                     break;
@@ -788,46 +1107,25 @@ public class PrivilegesEvaluator {
 
     private boolean checkFilteredAliases(Set<String> requestedResolvedIndices, String action) {
         //check filtered aliases
-        for(String requestAliasOrIndex: requestedResolvedIndices) {
+        final ClusterState state = clusterService.state();
+        final AliasSnapshot aliasSnapshot = irr.getAliasSnapshots().get(state);
 
-            final List<AliasMetaData> filteredAliases = new ArrayList<AliasMetaData>();
-
-            final IndexMetaData indexMetaData = clusterService.state().metaData().getIndices().get(requestAliasOrIndex);
+        for(String requestAliasOrIndex: requestedResolvedIndices) {
 
-            if(indexMetaData == null) {
+            if(!state.metaData().hasIndex(requestAliasOrIndex)) {
                 log.debug("{} does not exist in cluster metadata", requestAliasOrIndex);
                 continue;
             }
 
-            final ImmutableOpenMap<String, AliasMetaData> aliases = indexMetaData.getAliases();
-
-            if(aliases != null && aliases.size() > 0) {
-
-                if(log.isDebugEnabled()) {
-                    log.debug("Aliases for {}: {}", requestAliasOrIndex, aliases);
-                }
+            final List<AliasMetaData> filteredAliases = aliasSnapshot.getFilteredAliases(requestAliasOrIndex);
 
-                final Iterator<String> it = aliases.keysIt();
-                while(it.hasNext()) {
-                    final String alias = it.next();
-                    final AliasMetaData aliasMetaData = aliases.get(alias);
-
-                    if(aliasMetaData != null && aliasMetaData.filteringRequired()) {
-                        filteredAliases.add(aliasMetaData);
-                        if(log.isDebugEnabled()) {
-                            log.debug(alias+" is a filtered alias "+aliasMetaData.getFilter());
-                        }
-                    } else {
-                        if(log.isDebugEnabled()) {
-                            log.debug(alias+" is not an alias or does not have a filter");
-                        }
-                    }
-                }
+            if(log.isDebugEnabled() && !filteredAliases.isEmpty()) {
+                log.debug("Filtered aliases for {}: {}", requestAliasOrIndex, toString(filteredAliases));
             }
 
             if(filteredAliases.size() > 1 && WildcardMatcher.match("indices:data/read/*search*", action)) {
                 //TODO add queries as dls queries (works only if dls module is installed)
-                final String faMode = getConfigSettings().get("searchguard.dynamic.filtered_alias_mode","warn");
+                final String faMode = dynamicConfigModel.getDynamicConfig().getFilteredAliasMode();
 
                 if(faMode.equals("warn")) {
                     log.warn("More than one ({}) filtered alias found for same index ({}). This is currently not recommended. Aliases: {}", filteredAliases.size(), requestAliasOrIndex, toString(filteredAliases));
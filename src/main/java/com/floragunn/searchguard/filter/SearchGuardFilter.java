@@ -17,6 +17,8 @@
 
 package com.floragunn.searchguard.filter;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -26,6 +28,7 @@ import org.elasticsearch.ElasticsearchSecurityException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteRequest.OpType;
 import org.elasticsearch.action.admin.cluster.snapshots.restore.RestoreSnapshotRequest;
 import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
@@ -185,14 +188,16 @@ public class SearchGuardFilter implements ActionFilter {
                 boolean isImmutable = false;
                 
                 if(request instanceof BulkShardRequest) {
+                    //items are grouped by index so that every index is resolved only once
+                    final Map<String, Boolean> immutableByIndex = new HashMap<>();
                     for(BulkItemRequest bsr: ((BulkShardRequest) request).items()) {
-                        isImmutable = checkImmutableIndices(bsr.request(), listener);
+                        isImmutable = checkImmutableIndices(bsr.request(), listener, immutableByIndex);
                         if(isImmutable) {
                             break;
                         }
                     }
                 } else {
-                    isImmutable = checkImmutableIndices(request, listener);
+                    isImmutable = checkImmutableIndices(request, listener, null);
                 }
     
                 if(isImmutable) {
@@ -289,7 +294,7 @@ public class SearchGuardFilter implements ActionFilter {
     }
     
     @SuppressWarnings("rawtypes")
-    private boolean checkImmutableIndices(Object request, ActionListener listener) {
+    private boolean checkImmutableIndices(Object request, ActionListener listener, Map<String, Boolean> immutableByIndex) {
 
         if(        request instanceof DeleteRequest 
                 || request instanceof UpdateRequest 
@@ -301,7 +306,7 @@ public class SearchGuardFilter implements ActionFilter {
                 || request instanceof IndicesAliasesRequest //TODO only remove index
                 ) {
             
-            if(complianceConfig != null && complianceConfig.isIndexImmutable(request)) {
+            if(complianceConfig != null && isIndexImmutable(request, immutableByIndex)) {
                 //auditLog.log
                 
                 //check index for type = remove index
@@ -320,7 +325,7 @@ public class SearchGuardFilter implements ActionFilter {
         }
         
         if(request instanceof IndexRequest) {
-            if(complianceConfig != null && complianceConfig.isIndexImmutable(request)) {
+            if(complianceConfig != null && isIndexImmutable(request, immutableByIndex)) {
                 ((IndexRequest) request).opType(OpType.CREATE);
             }
         }
@@ -328,4 +333,19 @@ public class SearchGuardFilter implements ActionFilter {
         return false;
     }
 
+    @SuppressWarnings("rawtypes")
+    private boolean isIndexImmutable(Object request, Map<String, Boolean> immutableByIndex) {
+        if(immutableByIndex == null || !(request instanceof DocWriteRequest)) {
+            return complianceConfig.isIndexImmutable(request);
+        }
+
+        final String index = ((DocWriteRequest) request).index();
+        Boolean immutable = immutableByIndex.get(index);
+        if(immutable == null) {
+            immutable = complianceConfig.isIndexImmutable(request);
+            immutableByIndex.put(index, immutable);
+        }
+        return immutable;
+    }
+
 }
\ No newline at end of file
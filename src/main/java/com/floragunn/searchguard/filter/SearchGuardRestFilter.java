@@ -24,6 +24,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
@@ -77,14 +78,55 @@ public class SearchGuardRestFilter {
             @Override
             public void handleRequest(RestRequest request, RestChannel channel, NodeClient client) throws Exception {
                 org.apache.logging.log4j.ThreadContext.clearAll();
-                if(!checkAndAuthenticateRequest(request, channel, client)) {
+                if(checkRequest(request, channel, client)) {
+                    return;
+                }
+
+                if(!requiresAuthentication(request)) {
                     original.handleRequest(request, channel, client);
+                    return;
                 }
+
+                //may continue on the auth thread pool
+                registry.authenticate(request, channel, threadContext, new ActionListener<Boolean>() {
+
+                    @Override
+                    public void onResponse(Boolean authenticated) {
+                        if (!authenticated) {
+                            // another roundtrip
+                            org.apache.logging.log4j.ThreadContext.remove("user");
+                            return;
+                        }
+
+                        // make it possible to filter logs by username
+                        org.apache.logging.log4j.ThreadContext.put("user", ((User)threadContext.getTransient(ConfigConstants.SG_USER)).getName());
+
+                        try {
+                            original.handleRequest(request, channel, client);
+                        } catch (Exception e) {
+                            onFailure(e);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        try {
+                            channel.sendResponse(new BytesRestResponse(channel, e));
+                        } catch (Exception inner) {
+                            inner.addSuppressed(e);
+                            log.error("Failed to send failure response for uri [{}]", request.uri(), inner);
+                        }
+                    }
+                });
             }
         };
     }
 
-    private boolean checkAndAuthenticateRequest(RestRequest request, RestChannel channel, NodeClient client) throws Exception {
+    /**
+     * 
+     * @return true if the request was rejected and a response was already sent
+     */
+    private boolean checkRequest(RestRequest request, RestChannel channel, NodeClient client) throws Exception {
 
         threadContext.putTransient(ConfigConstants.SG_ORIGIN, Origin.REST.toString());
         
@@ -124,23 +166,13 @@ public class SearchGuardRestFilter {
             return true;
         }
         
-        if(!compatConfig.restAuthEnabled()) {
-            return false;
-        }
+        return false;
+    }
 
-        if(request.method() != Method.OPTIONS 
+    private boolean requiresAuthentication(RestRequest request) {
+        return compatConfig.restAuthEnabled()
+                && request.method() != Method.OPTIONS 
                 && !"/_searchguard/license".equals(request.path())
-                && !"/_searchguard/health".equals(request.path())) {
-            if (!registry.authenticate(request, channel, threadContext)) {
-                // another roundtrip
-                org.apache.logging.log4j.ThreadContext.remove("user");
-                return true;
-            } else {
-                // make it possible to filter logs by username
-                org.apache.logging.log4j.ThreadContext.put("user", ((User)threadContext.getTransient(ConfigConstants.SG_USER)).getName());
-            }
-        }
-        
-        return false;
+                && !"/_searchguard/health".equals(request.path());
     }
 }
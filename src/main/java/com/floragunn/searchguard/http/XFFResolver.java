@@ -30,18 +30,22 @@ import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import com.floragunn.searchguard.configuration.ConfigurationChangeListener;
+import com.floragunn.searchguard.sgconf.DynamicConfig;
+import com.floragunn.searchguard.sgconf.DynamicConfigModel;
 import com.floragunn.searchguard.support.ConfigConstants;
 
 public class XFFResolver implements ConfigurationChangeListener {
 
     protected final Logger log = LogManager.getLogger(this.getClass());
-    private volatile boolean enabled;
+    //null if xff is disabled
     private volatile RemoteIpDetector detector;
     private final ThreadContext threadContext;
+    private final DynamicConfigModel dynamicConfigModel;
         
-    public XFFResolver(final ThreadPool threadPool) {
+    public XFFResolver(final ThreadPool threadPool, final DynamicConfigModel dynamicConfigModel) {
         super();
         this.threadContext = threadPool.getThreadContext();
+        this.dynamicConfigModel = dynamicConfigModel;
     }
 
     public TransportAddress resolve(final RestRequest request) throws ElasticsearchSecurityException {
@@ -50,9 +54,11 @@ public class XFFResolver implements ConfigurationChangeListener {
             log.trace("resolve {}", request.getRemoteAddress());
         }
         
-        if(enabled && request.getRemoteAddress() instanceof InetSocketAddress && request instanceof Netty4HttpRequest) {
+        final RemoteIpDetector _detector = detector;
 
-            final InetSocketAddress isa = new InetSocketAddress(detector.detect((Netty4HttpRequest) request, threadContext), ((InetSocketAddress)request.getRemoteAddress()).getPort());
+        if(_detector != null && request.getRemoteAddress() instanceof InetSocketAddress && request instanceof Netty4HttpRequest) {
+
+            final InetSocketAddress isa = new InetSocketAddress(_detector.detect((Netty4HttpRequest) request, threadContext), ((InetSocketAddress)request.getRemoteAddress()).getPort());
         
             if(isa.isUnresolved()) {           
                 throw new ElasticsearchSecurityException("Cannot resolve address "+isa.getHostString());
@@ -70,7 +76,7 @@ public class XFFResolver implements ConfigurationChangeListener {
         } else if(request.getRemoteAddress() instanceof InetSocketAddress){
             
             if(log.isTraceEnabled()) {
-                log.trace("no xff done (enabled or no netty request) {},{},{},{}",enabled, request.getClass());
+                log.trace("no xff done (enabled or no netty request) {},{},{},{}",_detector != null, request.getClass());
 
             }
             return new TransportAddress((InetSocketAddress)request.getRemoteAddress());
@@ -81,13 +87,22 @@ public class XFFResolver implements ConfigurationChangeListener {
 
     @Override
     public void onChange(final Settings settings) {
-        enabled = settings.getAsBoolean("searchguard.dynamic.http.xff.enabled", true);
-        if(enabled) {
-            detector = new RemoteIpDetector();
-            detector.setInternalProxies(settings.get("searchguard.dynamic.http.xff.internalProxies", detector.getInternalProxies()));
-            detector.setProxiesHeader(settings.get("searchguard.dynamic.http.xff.proxiesHeader", detector.getProxiesHeader()));
-            detector.setRemoteIpHeader(settings.get("searchguard.dynamic.http.xff.remoteIpHeader", detector.getRemoteIpHeader()));
-            detector.setTrustedProxies(settings.get("searchguard.dynamic.http.xff.trustedProxies", detector.getTrustedProxies()));
+        final DynamicConfig dynamicConfig = dynamicConfigModel.getDynamicConfig(settings);
+        if(dynamicConfig.isXffEnabled()) {
+            final RemoteIpDetector _detector = new RemoteIpDetector();
+            if(dynamicConfig.getXffInternalProxies() != null) {
+                _detector.setInternalProxies(dynamicConfig.getXffInternalProxies());
+            }
+            if(dynamicConfig.getXffProxiesHeader() != null) {
+                _detector.setProxiesHeader(dynamicConfig.getXffProxiesHeader());
+            }
+            if(dynamicConfig.getXffRemoteIpHeader() != null) {
+                _detector.setRemoteIpHeader(dynamicConfig.getXffRemoteIpHeader());
+            }
+            if(dynamicConfig.getXffTrustedProxies() != null) {
+                _detector.setTrustedProxies(dynamicConfig.getXffTrustedProxies());
+            }
+            detector = _detector;
         } else {
             detector = null;
         }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.resolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+
+/**
+ * Immutable snapshot of the aliases of a cluster for one metadata version,
+ * kept by a {@link MetaDataSnapshotHolder}.
+ */
+public final class AliasSnapshot {
+
+    private final long version;
+    private final NavigableSet<String> aliases;
+    private final Map<String, Set<String>> aliasToIndices;
+    private final Map<String, Set<String>> indexToAliases;
+    private final Map<String, List<AliasMetaData>> indexToFilteredAliases;
+
+    private AliasSnapshot(final MetaData metaData) {
+        this.version = metaData.version();
+
+        final NavigableSet<String> aliases = new TreeSet<>();
+        final Map<String, Set<String>> aliasToIndices = new HashMap<>();
+        final Map<String, Set<String>> indexToAliases = new HashMap<>();
+        final Map<String, List<AliasMetaData>> indexToFilteredAliases = new HashMap<>();
+
+        for(final IndexMetaData indexMetaData: metaData) {
+            final String index = indexMetaData.getIndex().getName();
+            final Iterator<String> it = indexMetaData.getAliases().keysIt();
+            while(it.hasNext()) {
+                final String alias = it.next();
+                final AliasMetaData aliasMetaData = indexMetaData.getAliases().get(alias);
+                aliases.add(alias);
+                aliasToIndices.computeIfAbsent(alias, k->new HashSet<>()).add(index);
+                indexToAliases.computeIfAbsent(index, k->new HashSet<>()).add(alias);
+                if(aliasMetaData != null && aliasMetaData.filteringRequired()) {
+                    indexToFilteredAliases.computeIfAbsent(index, k->new ArrayList<>()).add(aliasMetaData);
+                }
+            }
+        }
+
+        this.aliases = Collections.unmodifiableNavigableSet(aliases);
+        this.aliasToIndices = aliasToIndices;
+        this.indexToAliases = indexToAliases;
+        this.indexToFilteredAliases = indexToFilteredAliases;
+    }
+
+    /**
+     *
+     * @return a holder which keeps the snapshot of the latest metadata version
+     */
+    public static MetaDataSnapshotHolder<AliasSnapshot> newHolder() {
+        return new MetaDataSnapshotHolder<>(AliasSnapshot::new);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     *
+     * @return all alias names, sorted
+     */
+    public NavigableSet<String> getAliases() {
+        return aliases;
+    }
+
+    /**
+     *
+     * @param alias
+     * @return the names of the indices the alias points to, never null
+     */
+    public Set<String> getIndices(final String alias) {
+        final Set<String> indices = aliasToIndices.get(alias);
+        return indices == null?Collections.emptySet():Collections.unmodifiableSet(indices);
+    }
+
+    /**
+     *
+     * @param index
+     * @return the names of the aliases of the index, never null
+     */
+    public Set<String> getAliases(final String index) {
+        final Set<String> aliases = indexToAliases.get(index);
+        return aliases == null?Collections.emptySet():Collections.unmodifiableSet(aliases);
+    }
+
+    /**
+     *
+     * @param index
+     * @return the aliases of the index which require filtering, never null
+     */
+    public List<AliasMetaData> getFilteredAliases(final String index) {
+        final List<AliasMetaData> filteredAliases = indexToFilteredAliases.get(index);
+        return filteredAliases == null?Collections.emptyList():Collections.unmodifiableList(filteredAliases);
+    }
+
+    @Override
+    public String toString() {
+        return "AliasSnapshot [version=" + version + ", aliases=" + aliases.size() + "]";
+    }
+}
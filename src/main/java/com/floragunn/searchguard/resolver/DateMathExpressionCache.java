@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.resolver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the expansion of date math index expressions like <code>&lt;logs-{now/d}&gt;</code>
+ * until the next boundary of the finest time unit used in the expression.
+ * <p>
+ * Only expressions which round <code>now</code> are cached, the others depend on the current
+ * millisecond. If a time zone is given the boundary is at most one minute ahead because time zone
+ * offsets are not always whole hours.
+ */
+final class DateMathExpressionCache {
+
+    static final long NOT_CACHEABLE = 0L;
+    private static final int MAX_EXPRESSIONS = 1000;
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final IndexNameExpressionResolver resolver;
+    private final Cache<String, Expansion> expansions = CacheBuilder.newBuilder()
+            .maximumSize(MAX_EXPRESSIONS)
+            .build();
+
+    DateMathExpressionCache(final IndexNameExpressionResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     *
+     * @param expression
+     * @return the expanded expression, the expression itself if it is not a date math expression
+     */
+    String resolve(final String expression) {
+        if(!isDateMath(expression)) {
+            return expression;
+        }
+
+        final Expansion expansion = expansions.getIfPresent(expression);
+        final long bucket;
+
+        if(expansion != null) {
+            if(expansion.bucket == NOT_CACHEABLE) {
+                return resolver.resolveDateMathExpression(expression);
+            }
+
+            if(System.currentTimeMillis() < expansion.validUntil) {
+                return expansion.value;
+            }
+
+            bucket = expansion.bucket;
+        } else {
+            bucket = bucketMillis(expression);
+        }
+
+        if(bucket == NOT_CACHEABLE) {
+            expansions.put(expression, new Expansion(NOT_CACHEABLE, null, 0L));
+            return resolver.resolveDateMathExpression(expression);
+        }
+
+        final long start = System.currentTimeMillis();
+        final String value = resolver.resolveDateMathExpression(expression);
+        final long end = System.currentTimeMillis();
+
+        //only cache if the resolver did not cross a boundary meanwhile
+        if(start / bucket == end / bucket) {
+            expansions.put(expression, new Expansion(bucket, value, (start / bucket + 1) * bucket));
+        }
+
+        return value;
+    }
+
+    /**
+     *
+     * @param expressions
+     * @return the expanded expressions
+     */
+    String[] resolve(final String[] expressions) {
+        if(expressions == null) {
+            return null;
+        }
+
+        String[] resolved = expressions;
+        for (int i = 0; i < expressions.length; i++) {
+            final String expanded = resolve(expressions[i]);
+            if(expanded != expressions[i]) {
+                if(resolved == expressions) {
+                    resolved = expressions.clone();
+                }
+                resolved[i] = expanded;
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     *
+     * @param expressions
+     * @return true if all date math expressions expand to the same value for a while
+     */
+    boolean isCacheable(final String[] expressions) {
+        for (int i = 0; i < expressions.length; i++) {
+            if(isDateMath(expressions[i])) {
+                final Expansion expansion = expansions.getIfPresent(expressions[i]);
+                final long bucket = expansion == null?bucketMillis(expressions[i]):expansion.bucket;
+                if(bucket == NOT_CACHEABLE) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static boolean isDateMath(final String expression) {
+        return expression != null && expression.startsWith("<") && expression.endsWith(">");
+    }
+
+    /**
+     * Determine the length of the time buckets within the expansion of a date math expression does not change.
+     * Offsets and roundings are whole multiples of their unit, so the expansion only changes on a boundary of the finest unit.
+     *
+     * @param expression like &lt;static{now-1d/d{yyyy.MM.dd|+01:00}}&gt;
+     * @return the bucket length in milliseconds or {@link #NOT_CACHEABLE}
+     */
+    static long bucketMillis(final String expression) {
+        if(!isDateMath(expression) || expression.indexOf('\\') > -1) {
+            //escaped braces are rare, do not bother
+            return NOT_CACHEABLE;
+        }
+
+        long bucket = DAY;
+        boolean dateMath = false;
+        final int end = expression.length() - 1;
+
+        for (int i = 1; i < end; i++) {
+            final char c = expression.charAt(i);
+
+            if(c == '}') {
+                return NOT_CACHEABLE;
+            }
+
+            if(c == '{') {
+                int depth = 1;
+                int close = i + 1;
+                for (; close < end && depth > 0; close++) {
+                    if(expression.charAt(close) == '{') {
+                        depth++;
+                    } else if(expression.charAt(close) == '}') {
+                        depth--;
+                    }
+                }
+
+                if(depth != 0) {
+                    return NOT_CACHEABLE;
+                }
+
+                //close is now one behind the closing brace
+                final String inner = expression.substring(i + 1, close - 1);
+                final int formatStart = inner.indexOf('{');
+                final long mathBucket = mathBucketMillis(formatStart < 0?inner:inner.substring(0, formatStart));
+
+                if(mathBucket == NOT_CACHEABLE) {
+                    return NOT_CACHEABLE;
+                }
+
+                bucket = Math.min(bucket, mathBucket);
+
+                if(formatStart > -1 && inner.indexOf('|', formatStart) > -1) {
+                    //time zone
+                    bucket = Math.min(bucket, MINUTE);
+                }
+
+                dateMath = true;
+                i = close - 1;
+            }
+        }
+
+        return dateMath?bucket:NOT_CACHEABLE;
+    }
+
+    private static long mathBucketMillis(final String math) {
+        if(!math.startsWith("now")) {
+            return NOT_CACHEABLE;
+        }
+
+        long bucket = DAY;
+        boolean rounded = false;
+        int i = 3;
+
+        while(i < math.length()) {
+            final char op = math.charAt(i++);
+
+            if(op == '/') {
+                rounded = true;
+            } else if(op == '+' || op == '-') {
+                while(i < math.length() && Character.isDigit(math.charAt(i))) {
+                    i++;
+                }
+            } else {
+                return NOT_CACHEABLE;
+            }
+
+            if(i >= math.length()) {
+                return NOT_CACHEABLE;
+            }
+
+            final long unit = unitMillis(math.charAt(i++));
+
+            if(unit == NOT_CACHEABLE) {
+                return NOT_CACHEABLE;
+            }
+
+            bucket = Math.min(bucket, unit);
+        }
+
+        return rounded?bucket:NOT_CACHEABLE;
+    }
+
+    private static long unitMillis(final char unit) {
+        switch (unit) {
+        case 's':
+            return SECOND;
+        case 'm':
+            return MINUTE;
+        case 'h':
+        case 'H':
+            return HOUR;
+        case 'd':
+        case 'w':
+        case 'M':
+        case 'y':
+            //weeks, months and years start on a day boundary
+            return DAY;
+        default:
+            return NOT_CACHEABLE;
+        }
+    }
+
+    private static final class Expansion {
+        private final long bucket;
+        private final String value;
+        private final long validUntil;
+
+        private Expansion(final long bucket, final String value, final long validUntil) {
+            this.bucket = bucket;
+            this.value = value;
+            this.validUntil = validUntil;
+        }
+    }
+}
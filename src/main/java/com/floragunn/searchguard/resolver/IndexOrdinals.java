@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.resolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.SparseFixedBitSet;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+
+/**
+ * Immutable dictionary which assigns every index and alias of a metadata version a dense int ordinal,
+ * so that sets of indices can be represented as bit sets.
+ * <p>
+ * Ordinals are only meaningful together with the dictionary instance which assigned them.
+ */
+public final class IndexOrdinals {
+
+    private final long version;
+    private final Map<String, Integer> ordinals;
+    private final String[] names;
+
+    private IndexOrdinals(final MetaData metaData) {
+        this.version = metaData.version();
+
+        final Map<String, Integer> ordinals = new HashMap<>();
+        final List<String> aliases = new ArrayList<>();
+        for(final IndexMetaData indexMetaData: metaData) {
+            ordinals.putIfAbsent(indexMetaData.getIndex().getName(), ordinals.size());
+            final Iterator<String> it = indexMetaData.getAliases().keysIt();
+            while(it.hasNext()) {
+                aliases.add(it.next());
+            }
+        }
+        //aliases after the indices so that the ordinals of the indices are dense
+        for(final String alias: aliases) {
+            ordinals.putIfAbsent(alias, ordinals.size());
+        }
+
+        final String[] names = new String[ordinals.size()];
+        for(final Map.Entry<String, Integer> entry: ordinals.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+
+        this.ordinals = ordinals;
+        this.names = names;
+    }
+
+    /**
+     *
+     * @return a holder which keeps the dictionary of the latest metadata version
+     */
+    public static MetaDataSnapshotHolder<IndexOrdinals> newHolder() {
+        return new MetaDataSnapshotHolder<>(IndexOrdinals::new);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     *
+     * @return the number of ordinals, all ordinals are smaller than this
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     *
+     * @param name index or alias name
+     * @return the ordinal or -1 if there is no such index or alias
+     */
+    public int ordinal(final String name) {
+        final Integer ordinal = name == null?null:ordinals.get(name);
+        return ordinal == null?-1:ordinal.intValue();
+    }
+
+    /**
+     *
+     * @param ordinal
+     * @return the index or alias name for the ordinal
+     */
+    public String name(final int ordinal) {
+        return names[ordinal];
+    }
+
+    /**
+     *
+     * @param names
+     * @return the ordinals of all known names, unknown names are ignored.
+     * Memory is proportional to the number of known names and not to the size of the dictionary.
+     */
+    public SparseFixedBitSet toBitSet(final String[] names) {
+        final SparseFixedBitSet bits = new SparseFixedBitSet(Math.max(1, this.names.length));
+        for (int i = 0; i < names.length; i++) {
+            final int ordinal = ordinal(names[i]);
+            if(ordinal > -1) {
+                bits.set(ordinal);
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexOrdinals [version=" + version + ", size=" + names.length + "]";
+    }
+}
@@ -19,7 +19,6 @@ package com.floragunn.searchguard.resolver;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -29,10 +28,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -69,13 +68,14 @@ import org.elasticsearch.action.termvectors.MultiTermVectorsRequest;
 import org.elasticsearch.action.termvectors.TermVectorsRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.cluster.ClusterState;
-import org.elasticsearch.cluster.metadata.AliasOrIndex;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.reindex.ReindexRequest;
@@ -86,8 +86,12 @@ import org.elasticsearch.transport.TransportRequest;
 
 import com.floragunn.searchguard.SearchGuardPlugin;
 import com.floragunn.searchguard.configuration.ClusterInfoHolder;
+import com.floragunn.searchguard.support.CacheStatsInfo;
+import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.support.SnapshotRestoreHelper;
 import com.floragunn.searchguard.support.WildcardMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 
 public final class IndexResolverReplacer {
@@ -95,18 +99,53 @@ public final class IndexResolverReplacer {
     //private final static IndicesOptions DEFAULT_INDICES_OPTIONS = IndicesOptions.lenientExpandOpen();
     //private static final String[] NO_INDICES_SET = Sets.newHashSet("\\",";",",","/","|").toArray(new String[0]);
     private static final Set<String> NULL_SET = Sets.newHashSet((String)null);
-    private final Map<Class<?>, Method> typeCache = Collections.synchronizedMap(new HashMap<Class<?>, Method>(100));
-    private final Map<Class<?>, Method> typesCache = Collections.synchronizedMap(new HashMap<Class<?>, Method>(100));
     private final Logger log = LogManager.getLogger(this.getClass());
     private final IndexNameExpressionResolver resolver;
     private final ClusterService clusterService;
     private final ClusterInfoHolder clusterInfoHolder;
-
-    public IndexResolverReplacer(IndexNameExpressionResolver resolver, ClusterService clusterService, ClusterInfoHolder clusterInfoHolder) {
+    //null if disabled
+    private final Cache<ResolvedKey, Resolved> resolvedCache;
+    //null if disabled
+    private final Cache<ResolvedKey, CcsGrouping> ccsCache;
+    private final DateMathExpressionCache dateMathCache;
+    private final MetaDataSnapshotHolder<AliasSnapshot> aliasSnapshots = AliasSnapshot.newHolder();
+
+    public IndexResolverReplacer(IndexNameExpressionResolver resolver, ClusterService clusterService, ClusterInfoHolder clusterInfoHolder, Settings settings) {
         super();
         this.resolver = resolver;
         this.clusterService = clusterService;
         this.clusterInfoHolder = clusterInfoHolder;
+        this.dateMathCache = new DateMathExpressionCache(resolver);
+
+        final int resolvedCacheSize = settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_RESOLVED_INDICES_MAX_SIZE, 1000);
+        if(resolvedCacheSize > 0) {
+            this.resolvedCache = CacheBuilder.newBuilder()
+                    .maximumSize(resolvedCacheSize)
+                    .recordStats()
+                    .build();
+            this.ccsCache = CacheBuilder.newBuilder()
+                    .maximumSize(resolvedCacheSize)
+                    .build();
+        } else {
+            this.resolvedCache = null;
+            this.ccsCache = null;
+        }
+    }
+
+    /**
+     *
+     * @return hit and miss counts of the resolved index expressions cache or null if the cache is disabled
+     */
+    public CacheStatsInfo getResolvedCacheStats() {
+        return CacheStatsInfo.of(resolvedCache);
+    }
+
+    /**
+     *
+     * @return the alias snapshots of this resolver, to be shared with other components of the node
+     */
+    public MetaDataSnapshotHolder<AliasSnapshot> getAliasSnapshots() {
+        return aliasSnapshots;
     }
 
     public static final boolean isAll(final String... requestedPatterns) {
@@ -142,18 +181,58 @@ public final class IndexResolverReplacer {
            return Resolved._ALL;
        }
 
-       ClusterState state = clusterService.state();
+       final ClusterState state = clusterService.state();
 
-       final SortedMap<String, AliasOrIndex> lookup = state.metaData().getAliasAndIndexLookup();
-       final Set<String> aliases = lookup.entrySet().stream().filter(e->e.getValue().isAlias()).map(e->e.getKey()).collect(Collectors.toSet());
+       if(resolvedCache == null) {
+           return resolveIndexPatterns(state, requestedPatterns, dateMathCache.resolve(requestedPatterns));
+       }
+
+       //date math depends on the current time and not only on the metadata, so the expansions are part of the key
+       final String[] dateMathResolved;
+       if(containsDateMath(requestedPatterns)) {
+           if(!dateMathCache.isCacheable(requestedPatterns)) {
+               return resolveIndexPatterns(state, requestedPatterns, dateMathCache.resolve(requestedPatterns));
+           }
+           dateMathResolved = dateMathCache.resolve(requestedPatterns);
+       } else {
+           dateMathResolved = null;
+       }
+
+       final ResolvedKey key = new ResolvedKey(requestedPatterns, dateMathResolved, state.metaData());
+       Resolved resolved = resolvedCache.getIfPresent(key);
+
+       if(resolved == null) {
+           resolved = resolveIndexPatterns(state, requestedPatterns, dateMathResolved==null?requestedPatterns:dateMathResolved);
+           resolvedCache.put(key, resolved);
+       } else if(log.isTraceEnabled()) {
+           log.trace("Use cached {} for {}", resolved, key.patterns);
+       }
+
+       return resolved;
+    }
+
+    private static boolean containsDateMath(final String[] requestedPatterns) {
+        for (int i = 0; i < requestedPatterns.length; i++) {
+            if(DateMathExpressionCache.isDateMath(requestedPatterns[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //dateMathResolved are the requestedPatterns with date math already expanded so that it is not parsed again
+    private Resolved resolveIndexPatterns(final ClusterState state, final String[] requestedPatterns, final String[] dateMathResolved) {
+
+       final AliasSnapshot aliasSnapshot = aliasSnapshots.get(state);
+       final NavigableSet<String> aliases = aliasSnapshot.getAliases();
 
        final Set<String> matchingAliases = new HashSet<>(requestedPatterns.length*10);
        final Set<String> matchingIndices = new HashSet<>(requestedPatterns.length*10);
        final Set<String> matchingAllIndices = new HashSet<>(requestedPatterns.length*10);
 
        //fill matchingAliases
-       for (int i = 0; i < requestedPatterns.length; i++) {
-           final String requestedPattern = resolver.resolveDateMathExpression(requestedPatterns[i]);
+       for (int i = 0; i < dateMathResolved.length; i++) {
+           final String requestedPattern = dateMathResolved[i];
            final List<String> _aliases = WildcardMatcher.getMatchAny(requestedPattern, aliases);
            matchingAliases.addAll(_aliases);
        }
@@ -168,7 +247,7 @@ public final class IndexResolverReplacer {
 
             List<String> _indices;
             try {
-                _indices = new ArrayList<>(Arrays.asList(resolver.concreteIndexNames(state, IndicesOptions.fromOptions(false, true, true, false), requestedPatterns)));
+                _indices = new ArrayList<>(Arrays.asList(resolver.concreteIndexNames(state, IndicesOptions.fromOptions(false, true, true, false), dateMathResolved)));
                 if (log.isDebugEnabled()) {
                     log.debug("Resolved pattern {} to {}", requestedPatterns, _indices);
                 }
@@ -177,12 +256,7 @@ public final class IndexResolverReplacer {
                     log.debug("No such indices for pattern {}, use raw value", (Object[]) requestedPatterns);
                 }
 
-                _indices = new ArrayList<>(requestedPatterns.length);
-
-                for (int i = 0; i < requestedPatterns.length; i++) {
-                    String requestedPattern = requestedPatterns[i];
-                    _indices.add(resolver.resolveDateMathExpression(requestedPattern));
-                }
+                _indices = new ArrayList<>(Arrays.asList(dateMathResolved));
 
                 /*if(requestedPatterns.length == 1) {
                     _indices = Collections.singletonList(resolver.resolveDateMathExpression(requestedPatterns[0]));
@@ -205,8 +279,7 @@ public final class IndexResolverReplacer {
                if(!_indices.isEmpty()) {
 
                    for(String al:_aliases) {
-                       Set<String> doubleIndices = lookup.get(al).getIndices().stream().map(a->a.getIndex().getName()).collect(Collectors.toSet());
-                       _indices.removeAll(doubleIndices);
+                       _indices.removeAll(aliasSnapshot.getIndices(al));
                    }
 
                    matchingIndices.addAll(_indices);
@@ -236,59 +309,7 @@ public final class IndexResolverReplacer {
             } else if (request instanceof GetRequest) {
                 requestTypes.add(((GetRequest) request).type());
             } else {
-
-                Method typeMethod = null;
-                if (typeCache.containsKey(requestClass)) {
-                    typeMethod = typeCache.get(requestClass);
-                } else {
-                    try {
-                        typeMethod = requestClass.getMethod("type");
-                        typeCache.put(requestClass, typeMethod);
-                    } catch (NoSuchMethodException e) {
-                        typeCache.put(requestClass, null);
-                    } catch (SecurityException e) {
-                        log.error("Cannot evaluate type() for {} due to {}", requestClass, e, e);
-                    }
-
-                }
-
-                Method typesMethod = null;
-                if (typesCache.containsKey(requestClass)) {
-                    typesMethod = typesCache.get(requestClass);
-                } else {
-                    try {
-                        typesMethod = requestClass.getMethod("types");
-                        typesCache.put(requestClass, typesMethod);
-                    } catch (NoSuchMethodException e) {
-                        typesCache.put(requestClass, null);
-                    } catch (SecurityException e) {
-                        log.error("Cannot evaluate types() for {} due to {}", requestClass, e, e);
-                    }
-
-                }
-
-                if (typeMethod != null) {
-                    try {
-                        String type = (String) typeMethod.invoke(request);
-                        if (type != null) {
-                            requestTypes.add(type);
-                        }
-                    } catch (Exception e) {
-                        log.error("Unable to invoke type() for {} due to", requestClass, e);
-                    }
-                }
-
-                if (typesMethod != null) {
-                    try {
-                        final String[] types = (String[]) typesMethod.invoke(request);
-
-                        if (types != null) {
-                            requestTypes.addAll(Arrays.asList(types));
-                        }
-                    } catch (Exception e) {
-                        log.error("Unable to invoke types() for {} due to", requestClass, e);
-                    }
-                }
+                RequestTypeAccessor.of(requestClass).addTypes(request, requestTypes);
             }
 
         }
@@ -345,6 +366,8 @@ public final class IndexResolverReplacer {
 
     //dnfof
     public boolean replace(final TransportRequest request, boolean retainMode, String... replacements) {
+        //sub requests of multi requests mostly share a few index expressions
+        final Map<List<String>, String[]> retainedByOriginal = retainMode && isMultiRequest(request)?new HashMap<>():null;
         return getOrReplaceAllIndices(request, new IndicesProvider() {
 
             @Override
@@ -356,7 +379,20 @@ public final class IndexResolverReplacer {
                         if(originalAsList.contains("*") || originalAsList.contains("_all")) {
                             return replacements;
                         }
+
+                        if(retainedByOriginal != null) {
+                            final String[] retained = retainedByOriginal.get(originalAsList);
+                            if(retained != null) {
+                                return retained.clone();
+                            }
+                        }
+
                         final String[] retained = WildcardMatcher.getMatchAny(original, replacements).toArray(new String[0]);
+
+                        if(retainedByOriginal != null) {
+                            retainedByOriginal.put(new ArrayList<>(originalAsList), retained.clone());
+                        }
+
                         return retained;
                     }
                     return replacements;
@@ -367,12 +403,20 @@ public final class IndexResolverReplacer {
         }, false);
     }
 
+    private static boolean isMultiRequest(final Object request) {
+        return request instanceof MultiSearchRequest
+                || request instanceof MultiGetRequest
+                || request instanceof MultiTermVectorsRequest;
+    }
+
     public Resolved resolveRequest(final Object request) {
         if(log.isDebugEnabled()) {
             log.debug("Resolve aliases, indices and types from {}", request.getClass().getSimpleName());
         }
         Resolved.Builder resolvedBuilder = new Resolved.Builder();
         final AtomicBoolean returnEmpty = new AtomicBoolean();
+        //bulk items and sub requests of multi requests mostly target a few indices, so resolve every distinct index expression only once
+        final Set<List<String>> resolvedPatterns = request instanceof BulkRequest || isMultiRequest(request)?new HashSet<>():null;
         getOrReplaceAllIndices(request, new IndicesProvider() {
 
             @Override
@@ -398,13 +442,16 @@ public final class IndexResolverReplacer {
                     }
 
                 } else {
-                    final Resolved iResolved = resolveIndexPatterns(original);
+                    if(resolvedPatterns == null || resolvedPatterns.add(original==null?Collections.emptyList():Arrays.asList(original))) {
+                        final Resolved iResolved = resolveIndexPatterns(original);
 
-                    if(log.isTraceEnabled()) {
-                        log.trace("Resolved patterns {} for {} ({}) to {}", original, localRequest.getClass().getSimpleName(), request.getClass().getSimpleName(), iResolved);
+                        if(log.isTraceEnabled()) {
+                            log.trace("Resolved patterns {} for {} ({}) to {}", original, localRequest.getClass().getSimpleName(), request.getClass().getSimpleName(), iResolved);
+                        }
+
+                        resolvedBuilder.add(iResolved);
                     }
 
-                    resolvedBuilder.add(iResolved);
                     resolvedBuilder.addTypes(resolveTypes(localRequest));
 
                 }
@@ -434,8 +481,25 @@ public final class IndexResolverReplacer {
         // TODO how to handle aliases with CCS??
         if (request instanceof FieldCapabilitiesRequest || request instanceof SearchRequest) {
             IndicesRequest.Replaceable searchRequest = request;
+            final ClusterState state = clusterService.state();
+
+            //remote clusters are configured in the cluster settings which are part of the metadata
+            //and applied before the new cluster state becomes visible, so the metadata version covers them too
+            final ResolvedKey key = ccsCache == null || localIndices == null?null:new ResolvedKey(localIndices, null, state.metaData());
+            final CcsGrouping cached = key == null?null:ccsCache.getIfPresent(key);
+
+            if(cached != null) {
+                if(cached.ccs) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("CCS case, original indices: " + Arrays.toString(localIndices)+", cached local indices: "+Arrays.toString(cached.localIndices));
+                    }
+                    return new Tuple<Boolean, String[]>(Boolean.TRUE, cached.localIndices==null?null:cached.localIndices.clone());
+                }
+                return new Tuple<Boolean, String[]>(Boolean.FALSE, localIndices);
+            }
+
             final Map<String, OriginalIndices> remoteClusterIndices = SearchGuardPlugin.GuiceHolder.getRemoteClusterService().groupIndices(
-                    searchRequest.indicesOptions(), searchRequest.indices(), idx -> resolver.hasIndexOrAlias(idx, clusterService.state()));
+                    searchRequest.indicesOptions(), searchRequest.indices(), idx -> resolver.hasIndexOrAlias(idx, state));
 
             if (remoteClusterIndices.size() > 1) {
                 // check permissions?
@@ -443,8 +507,9 @@ public final class IndexResolverReplacer {
                     log.debug("CCS case, original indices: " + Arrays.toString(localIndices));
                 }
 
+                //null if only remote clusters are requested
                 final OriginalIndices originalLocalIndices = remoteClusterIndices.get(RemoteClusterAware.LOCAL_CLUSTER_GROUP_KEY);
-                localIndices = originalLocalIndices.indices();
+                localIndices = originalLocalIndices == null?null:originalLocalIndices.indices();
                 modified = Boolean.TRUE;
 
                 if (log.isDebugEnabled()) {
@@ -453,12 +518,27 @@ public final class IndexResolverReplacer {
                     log.debug("modified local indices: " + Arrays.toString(localIndices));
                 }
             }
+
+            if(key != null) {
+                ccsCache.put(key, new CcsGrouping(modified.booleanValue(), localIndices == null?null:localIndices.clone()));
+            }
         }
 
         return new Tuple<Boolean, String[]>(modified, localIndices);
 
     }
 
+    private static final class CcsGrouping {
+        private final boolean ccs;
+        //null if only remote clusters are requested
+        private final String[] localIndices;
+
+        private CcsGrouping(final boolean ccs, final String[] localIndices) {
+            this.ccs = ccs;
+            this.localIndices = localIndices;
+        }
+    }
+
     public final static class Resolved implements Serializable, Writeable {
 
         /**
@@ -658,6 +738,44 @@ public final class IndexResolverReplacer {
 
     //--
 
+    //index expressions for a metadata version
+    private static final class ResolvedKey {
+        private final List<String> patterns;
+        //null if there is no date math
+        private final List<String> dateMathResolved;
+        private final String clusterUUID;
+        private final long metaDataVersion;
+        private final int hashCode;
+
+        private ResolvedKey(final String[] patterns, final String[] dateMathResolved, final MetaData metaData) {
+            this.patterns = Arrays.asList(patterns.clone());
+            this.dateMathResolved = dateMathResolved == null?null:Arrays.asList(dateMathResolved.clone());
+            this.clusterUUID = metaData.clusterUUID();
+            this.metaDataVersion = metaData.version();
+            this.hashCode = Objects.hash(this.patterns, this.dateMathResolved, clusterUUID, metaDataVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            ResolvedKey other = (ResolvedKey) obj;
+            return metaDataVersion == other.metaDataVersion
+                    && Objects.equals(clusterUUID, other.clusterUUID)
+                    && patterns.equals(other.patterns)
+                    && Objects.equals(dateMathResolved, other.dateMathResolved);
+        }
+    }
+
     @FunctionalInterface
     public interface IndicesProvider {
         public static final String[] NOOP = new String[0];
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.resolver;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+
+/**
+ * Keeps a snapshot built from the latest metadata version seen by its owner.
+ * The snapshot is rebuilt at most once per metadata version, concurrent callers wait for the rebuild.
+ * Snapshots for metadata older than the kept one are built on demand and not kept.
+ *
+ * @param <T> the snapshot type
+ */
+public final class MetaDataSnapshotHolder<T> {
+
+    private final Function<MetaData, T> factory;
+    private volatile Snapshot<T> current;
+
+    public MetaDataSnapshotHolder(final Function<MetaData, T> factory) {
+        this.factory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     *
+     * @param state
+     * @return the snapshot for the metadata of the given cluster state
+     */
+    public T get(final ClusterState state) {
+        final MetaData metaData = state.metaData();
+        Snapshot<T> snapshot = current;
+
+        if(snapshot != null && snapshot.isFor(metaData)) {
+            return snapshot.value;
+        }
+
+        synchronized (this) {
+            snapshot = current;
+
+            if(snapshot != null && snapshot.isFor(metaData)) {
+                return snapshot.value;
+            }
+
+            if(snapshot != null && snapshot.isNewerThan(metaData)) {
+                //a caller with a stale cluster state must not replace the current snapshot
+                return factory.apply(metaData);
+            }
+
+            snapshot = new Snapshot<>(metaData, factory.apply(metaData));
+            current = snapshot;
+            return snapshot.value;
+        }
+    }
+
+    private static final class Snapshot<T> {
+        private final String clusterUUID;
+        private final long version;
+        private final T value;
+
+        private Snapshot(final MetaData metaData, final T value) {
+            this.clusterUUID = metaData.clusterUUID();
+            this.version = metaData.version();
+            this.value = value;
+        }
+
+        private boolean isFor(final MetaData metaData) {
+            return version == metaData.version() && Objects.equals(clusterUUID, metaData.clusterUUID());
+        }
+
+        private boolean isNewerThan(final MetaData metaData) {
+            return version > metaData.version() && Objects.equals(clusterUUID, metaData.clusterUUID());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.resolver;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Precompiled accessors for the <code>type()</code> and <code>types()</code> methods of a request class.
+ * They are looked up once per class and kept in a {@link ClassValue}, so reading the types of a request
+ * does neither lock nor use reflection.
+ */
+final class RequestTypeAccessor {
+
+    private static final Logger log = LogManager.getLogger(RequestTypeAccessor.class);
+    private static final MethodType TYPE = MethodType.methodType(String.class, Object.class);
+    private static final MethodType TYPES = MethodType.methodType(String[].class, Object.class);
+
+    private static final ClassValue<RequestTypeAccessor> ACCESSORS = new ClassValue<RequestTypeAccessor>() {
+        @Override
+        protected RequestTypeAccessor computeValue(Class<?> requestClass) {
+            return new RequestTypeAccessor(requestClass, lookup(requestClass, "type", TYPE), lookup(requestClass, "types", TYPES));
+        }
+    };
+
+    private final Class<?> requestClass;
+    //null if the request class does not have such a method
+    private final MethodHandle type;
+    private final MethodHandle types;
+
+    private RequestTypeAccessor(final Class<?> requestClass, final MethodHandle type, final MethodHandle types) {
+        this.requestClass = requestClass;
+        this.type = type;
+        this.types = types;
+    }
+
+    static RequestTypeAccessor of(final Class<?> requestClass) {
+        return ACCESSORS.get(requestClass);
+    }
+
+    /**
+     * Add the types returned by <code>type()</code> and <code>types()</code> of the request
+     *
+     * @param request must be an instance of the class this accessor was created for
+     * @param requestTypes will be modified
+     */
+    void addTypes(final Object request, final Set<String> requestTypes) {
+        if (type != null) {
+            try {
+                final String type = (String) this.type.invokeExact(request);
+                if (type != null) {
+                    requestTypes.add(type);
+                }
+            } catch (Throwable e) {
+                log.error("Unable to invoke type() for {} due to", requestClass, e);
+            }
+        }
+
+        if (types != null) {
+            try {
+                final String[] types = (String[]) this.types.invokeExact(request);
+                if (types != null) {
+                    requestTypes.addAll(Arrays.asList(types));
+                }
+            } catch (Throwable e) {
+                log.error("Unable to invoke types() for {} due to", requestClass, e);
+            }
+        }
+    }
+
+    private static MethodHandle lookup(final Class<?> requestClass, final String name, final MethodType methodType) {
+        final Method method;
+        try {
+            method = requestClass.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (SecurityException e) {
+            log.error("Cannot evaluate {}() for {} due to {}", name, requestClass, e, e);
+            return null;
+        }
+
+        if(!methodType.returnType().isAssignableFrom(method.getReturnType())) {
+            if(log.isDebugEnabled()) {
+                log.debug("{}() of {} returns {}, ignore it", name, requestClass, method.getReturnType());
+            }
+            return null;
+        }
+
+        try {
+            return MethodHandles.publicLookup().unreflect(method).asType(methodType);
+        } catch (IllegalAccessException e) {
+            log.error("Cannot access {}() of {} due to {}", name, requestClass, e, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.rest;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+import java.io.IOException;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions.NodesResponseRestListener;
+
+import com.floragunn.searchguard.action.stats.StatsInfoAction;
+import com.floragunn.searchguard.action.stats.StatsInfoRequest;
+
+public class SearchGuardStatsAction extends BaseRestHandler {
+
+    public SearchGuardStatsAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/_searchguard/stats", this);
+        controller.registerHandler(GET, "/_searchguard/stats/{nodeId}", this);
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        final StatsInfoRequest statsInfoRequest = new StatsInfoRequest(Strings.splitStringByCommaToArray(request.param("nodeId")));
+        return channel -> client.executeLocally(StatsInfoAction.INSTANCE, statsInfoRequest, new NodesResponseRestListener<>(channel));
+    }
+
+    @Override
+    public String getName() {
+        return "Search Guard Stats";
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.Collection;
+
+import com.floragunn.searchguard.support.WildcardMatcher;
+
+/**
+ * Immutable matcher for a set of (resolved) action permissions like
+ * <code>indices:data/read/*</code> or <code>cluster:monitor/health</code>.
+ * <p>
+ * See {@link WildcardMatcher#compileSet(Collection)}: exact actions are hash lookups, the common <code>prefix*</code>
+ * patterns are kept in a trie and the other wildcard patterns are combined into one automaton.
+ */
+public final class ActionMatcher {
+
+    public static final ActionMatcher NONE = compile(null);
+
+    private final WildcardMatcher.Matcher matcher;
+
+    private ActionMatcher(WildcardMatcher.Matcher matcher) {
+        this.matcher = matcher;
+    }
+
+    public static ActionMatcher compile(final Collection<String> patterns) {
+        return new ActionMatcher(WildcardMatcher.compileSet(patterns));
+    }
+
+    /**
+     *
+     * @param action
+     * @return true if the action is matched by at least one permission
+     */
+    public boolean matches(final String action) {
+        return matcher.matches(action);
+    }
+
+    /**
+     *
+     * @param actions
+     * @return true if all actions are matched by at least one permission
+     */
+    public boolean matchesAll(final String[] actions) {
+        for (int i = 0; i < actions.length; i++) {
+            if(!matches(actions[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ActionMatcher [" + matcher + "]";
+    }
+}
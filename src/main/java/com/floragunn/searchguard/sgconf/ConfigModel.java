@@ -17,6 +17,7 @@
 
 package com.floragunn.searchguard.sgconf;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,36 +31,104 @@ import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.SparseFixedBitSet;
 import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 
 import com.floragunn.searchguard.configuration.ActionGroupHolder;
+import com.floragunn.searchguard.configuration.ConfigurationChangeListener;
 import com.floragunn.searchguard.configuration.ConfigurationRepository;
+import com.floragunn.searchguard.resolver.AliasSnapshot;
+import com.floragunn.searchguard.resolver.IndexOrdinals;
 import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
+import com.floragunn.searchguard.resolver.MetaDataSnapshotHolder;
+import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.support.WildcardMatcher;
 import com.floragunn.searchguard.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
-public class ConfigModel {
+public class ConfigModel implements ConfigurationChangeListener {
 
     protected final Logger log = LogManager.getLogger(this.getClass());
     private static final Set<String> IGNORED_TYPES = ImmutableSet.of("_dls_", "_fls_","_masked_fields_");
+    private static final int MAX_RESOLVED_INDEX_PATTERNS = 1000;
     private final ActionGroupHolder ah;
     private final ConfigurationRepository configurationRepository;
+    //shared by all index patterns of this model, see IndexPattern
+    private final MetaDataSnapshotHolder<IndexOrdinals> indexOrdinals = IndexOrdinals.newHolder();
+    private final MetaDataSnapshotHolder<AliasSnapshot> aliasSnapshots;
+    private volatile SgRoles sgRoles;
+    //the configurations sgRoles was compiled from, guarded by this
+    private Settings compiledRoles;
+    private Settings compiledActionGroups;
 
     public ConfigModel(final ActionGroupHolder ah,
             final ConfigurationRepository configurationRepository) {
+        this(ah, configurationRepository, AliasSnapshot.newHolder());
+    }
+
+    public ConfigModel(final ActionGroupHolder ah,
+            final ConfigurationRepository configurationRepository, final MetaDataSnapshotHolder<AliasSnapshot> aliasSnapshots) {
         super();
         this.ah = ah;
         this.configurationRepository = configurationRepository;
+        this.aliasSnapshots = aliasSnapshots;
+    }
+
+    /**
+     * Roles and action groups are both needed to compile the model so we
+     * always reload from the repository instead of using the passed settings.
+     * We are notified once for each of them if both change, but compile only once.
+     */
+    @Override
+    public void onChange(Settings unused) {
+        compile();
+    }
+
+    /**
+     * 
+     * @return the compiled roles of the current config version, never modify the result
+     */
+    public SgRoles getSgRoles() {
+        final SgRoles _sgRoles = this.sgRoles;
+        if(_sgRoles == null) {
+            //not yet notified about a config change
+            return compile();
+        }
+        return _sgRoles;
+    }
+
+    private synchronized SgRoles compile() {
+        final Settings roles = configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_ROLES, false);
+        final Settings actionGroups = configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_ACTION_GROUPS, false);
+
+        if(sgRoles != null && roles == compiledRoles && actionGroups == compiledActionGroups) {
+            log.debug("Roles and action groups did not change, skip recompilation");
+            return sgRoles;
+        }
+
+        final SgRoles _sgRoles = load(roles);
+        this.compiledRoles = roles;
+        this.compiledActionGroups = actionGroups;
+        this.sgRoles = _sgRoles;
+        if(log.isDebugEnabled()) {
+            log.debug("Recompiled {} roles", _sgRoles.roles.size());
+        }
+        return _sgRoles;
     }
 
     public SgRoles load() {
-        final Settings settings = configurationRepository.getConfiguration("roles", false);
+        return load(configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_ROLES, false));
+    }
+
+    private SgRoles load(final Settings settings) {
         SgRoles _sgRoles = new SgRoles();
         Set<String> sgRoles = settings.names();
         for(String sgRole: sgRoles) {
@@ -106,7 +175,7 @@ public class ConfigModel {
                 final List<String> fls = settings.getAsList(resolvedRole+".indices."+indexPattern+"._fls_");
                 final List<String> maskedFields = settings.getAsList(resolvedRole+".indices."+indexPattern+"._masked_fields_");
 
-                IndexPattern _indexPattern = new IndexPattern(indexPattern);
+                IndexPattern _indexPattern = new IndexPattern(indexPattern, indexOrdinals, aliasSnapshots);
                 _indexPattern.setDlsQuery(dls);
                 _indexPattern.addFlsFields(fls);
                 _indexPattern.addMaskedFields(maskedFields);
@@ -138,14 +207,19 @@ public class ConfigModel {
 
         protected final Logger log = LogManager.getLogger(this.getClass());
         
-        final Set<SgRole> roles = new HashSet<>(100);
+        final Map<String, SgRole> roles;
 
         private SgRoles() {
+            this(100);
+        }
+
+        private SgRoles(int expectedSize) {
+            this.roles = new HashMap<>(expectedSize);
         }
 
         private SgRoles addSgRole(SgRole sgRole) {
             if(sgRole != null) {
-                this.roles.add(sgRole);
+                this.roles.put(sgRole.getName(), sgRole);
             }
             return this;
         }
@@ -177,27 +251,68 @@ public class ConfigModel {
 
         @Override
         public String toString() {
-            return "roles=" + roles;
+            return "roles=" + roles.values();
         }
 
         public Set<SgRole> getRoles() {
-            return Collections.unmodifiableSet(roles);
+            return Collections.unmodifiableSet(new HashSet<>(roles.values()));
         }
 
         public SgRoles filter(Set<String> keep) {
-            final SgRoles retVal = new SgRoles();
-            for(SgRole sgr: roles) {
-                if(keep.contains(sgr.getName())) {
-                    retVal.addSgRole(sgr);
-                }
+            final SgRoles retVal = new SgRoles(keep.size());
+            for(String k: keep) {
+                retVal.addSgRole(roles.get(k));
             }
             return retVal;
         }
         
+        /**
+         *
+         * @return true if at least one role restricts documents or fields or masks fields
+         */
+        public boolean hasDlsFlsOrMaskedFields() {
+            for(SgRole sgr: roles.values()) {
+                if(sgr.dlsFlsOrMaskedFields) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         *
+         * @return true if DLS/FLS or masked fields depend on the user name or the user attributes
+         */
+        public boolean hasDlsFlsOrMaskedFieldsUserTemplates() {
+            for(SgRole sgr: roles.values()) {
+                if(sgr.dlsFlsOrMaskedFieldsUserTemplates) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         *
+         * @return true if index permissions depend on the user name or the user attributes
+         */
+        public boolean hasIndexPatternUserTemplates() {
+            for(SgRole sgr: roles.values()) {
+                if(sgr.indexPatternUserTemplates) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         public Map<String,Set<String>> getMaskedFields(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
             final Map<String,Set<String>> maskedFieldsMap = new HashMap<String, Set<String>>();
+
+            if(!hasDlsFlsOrMaskedFields()) {
+                return maskedFieldsMap;
+            }
             
-            for(SgRole sgr: roles) {
+            for(SgRole sgr: roles.values()) {
                 for(IndexPattern ip: sgr.getIpatterns()) {
                     final Set<String> maskedFields = ip.getMaskedFields();
                     final String indexPattern = ip.getUnresolvedIndexPattern(user);
@@ -236,7 +351,11 @@ public class ConfigModel {
             final Map<String,Set<String>> dlsQueries = new HashMap<String, Set<String>>();
             final Map<String,Set<String>> flsFields = new HashMap<String, Set<String>>();
 
-            for(SgRole sgr: roles) {
+            if(!hasDlsFlsOrMaskedFields()) {
+                return new Tuple<Map<String,Set<String>>, Map<String,Set<String>>>(dlsQueries, flsFields);
+            }
+
+            for(SgRole sgr: roles.values()) {
                 for(IndexPattern ip: sgr.getIpatterns()) {
                     final Set<String> fls = ip.getFls();
                     final String dls = ip.getDlsQuery(user);
@@ -297,7 +416,7 @@ public class ConfigModel {
         
         public Set<String> getAllPermittedIndices(User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
             Set<String> retVal = new HashSet<>();
-            for(SgRole sgr: roles) {
+            for(SgRole sgr: roles.values()) {
                 retVal.addAll(sgr.getAllResolvedPermittedIndices(Resolved._ALL, user, actions, resolver, cs));
             }
             return Collections.unmodifiableSet(retVal);
@@ -306,7 +425,7 @@ public class ConfigModel {
         //dnfof only
         public Set<String> reduce(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
             Set<String> retVal = new HashSet<>();
-            for(SgRole sgr: roles) {
+            for(SgRole sgr: roles.values()) {
                 retVal.addAll(sgr.getAllResolvedPermittedIndices(resolved, user, actions, resolver, cs));
             }
             if(log.isDebugEnabled()) {
@@ -317,7 +436,7 @@ public class ConfigModel {
 
         //return true on success
         public boolean get(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
-            for(SgRole sgr: roles) {
+            for(SgRole sgr: roles.values()) {
                 if(ConfigModel.impliesTypePerm(sgr.getIpatterns(), resolved, user, actions, resolver, cs)) {
                     return true;
                 }
@@ -326,14 +445,18 @@ public class ConfigModel {
         }
 
         public boolean impliesClusterPermissionPermission(String action) {
-            return roles.stream()
-                    .filter(r->r.impliesClusterPermission(action)).count() > 0;
+            for(SgRole sgr: roles.values()) {
+                if(sgr.impliesClusterPermission(action)) {
+                    return true;
+                }
+            }
+            return false;
         }
         
         //rolespan
         public boolean impliesTypePermGlobal(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
             Set<IndexPattern> ipatterns = new HashSet<ConfigModel.IndexPattern>();
-            roles.stream().forEach(p->ipatterns.addAll(p.getIpatterns()));
+            roles.values().stream().forEach(p->ipatterns.addAll(p.getIpatterns()));
             return ConfigModel.impliesTypePerm(ipatterns, resolved, user, actions, resolver, cs);
         }  
     }
@@ -344,6 +467,10 @@ public class ConfigModel {
         private final Set<Tenant> tenants = new HashSet<>();
         private final Set<IndexPattern> ipatterns = new HashSet<>();
         private final Set<String> clusterPerms = new HashSet<>();
+        private ActionMatcher clusterPermsMatcher = ActionMatcher.NONE;
+        private boolean dlsFlsOrMaskedFields;
+        private boolean dlsFlsOrMaskedFieldsUserTemplates;
+        private boolean indexPatternUserTemplates;
 
         private SgRole(String name) {
             super();
@@ -351,7 +478,7 @@ public class ConfigModel {
         }
 
         private boolean impliesClusterPermission(String action) {
-            return WildcardMatcher.matchAny(clusterPerms, action);
+            return clusterPermsMatcher.matches(action);
         }
 
         //get indices which are permitted for the given types and actions
@@ -364,24 +491,25 @@ public class ConfigModel {
                boolean patternMatch = false;
                final Set<TypePerm> tperms = p.getTypePerms();
                for(TypePerm tp: tperms) {
-                   if(WildcardMatcher.matchAny(tp.typePattern, resolved.getTypes().toArray(new String[0]))) {
-                       patternMatch = WildcardMatcher.matchAll(tp.perms.toArray(new String[0]), actions);
+                   if(tp.typeMatcher.matchesAny(resolved.getTypes())) {
+                       patternMatch = tp.permsMatcher.matchesAll(actions);
                    }
                }
                if(patternMatch) {
                    //resolved but can contain patterns for nonexistent indices
-                   final String[] permitted = p.getResolvedIndexPattern(user, resolver, cs); //maybe they do not exists
-                   final Set<String> res = new HashSet<>();
+                   final ClusterState state = cs.state();
+                   final ResolvedIndexPattern permitted = p.getResolvedIndexPattern(user, resolver, state); //maybe they do not exists
                    if(!resolved.isAll() && !resolved.getAllIndices().contains("*")  && !resolved.getAllIndices().contains("_all")) {
-                       final Set<String> wanted = new HashSet<>(resolved.getAllIndices());
-                       //resolved but can contain patterns for nonexistent indices
-                       WildcardMatcher.wildcardRetainInSet(wanted, permitted);
-                       res.addAll(wanted);
+                       //all wanted indices which are permitted
+                       for(String wanted: resolved.getAllIndices()) {
+                           if(permitted.matches(wanted)) {
+                               retVal.add(wanted);
+                           }
+                       }
                    } else {
                        //we want all indices so just return whats permitted
-                       res.addAll(Arrays.asList(resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), permitted)));
+                       retVal.addAll(Arrays.asList(resolver.concreteIndexNames(state, IndicesOptions.lenientExpandOpen(), permitted.resolved)));
                    }
-                   retVal.addAll(res);
                }
             }
 
@@ -401,6 +529,11 @@ public class ConfigModel {
         private SgRole addIndexPattern(IndexPattern indexPattern) {
             if(indexPattern != null) {
                 this.ipatterns.add(indexPattern);
+                this.indexPatternUserTemplates |= indexPattern.indexPattern.contains("${");
+                if(indexPattern.hasDlsFlsOrMaskedFields()) {
+                    this.dlsFlsOrMaskedFields = true;
+                    this.dlsFlsOrMaskedFieldsUserTemplates |= indexPattern.hasUserTemplates();
+                }
             }
             return this;
         }
@@ -408,6 +541,7 @@ public class ConfigModel {
         private SgRole addClusterPerms(Collection<String> clusterPerms) {
             if(clusterPerms != null) {
                 this.clusterPerms.addAll(clusterPerms);
+                this.clusterPermsMatcher = ActionMatcher.compile(this.clusterPerms);
             }
             return this;
         }
@@ -474,6 +608,14 @@ public class ConfigModel {
             return Collections.unmodifiableSet(clusterPerms);
         }
 
+        /**
+         *
+         * @return the cluster permissions compiled into a matcher
+         */
+        public ActionMatcher getClusterPermsMatcher() {
+            return clusterPermsMatcher;
+        }
+
         public String getName() {
             return name;
         }
@@ -487,10 +629,19 @@ public class ConfigModel {
         private final Set<String> fls = new HashSet<>();
         private final Set<String> maskedFields = new HashSet<>();
         private final Set<TypePerm> typePerms = new HashSet<>();
-
-        public IndexPattern(String indexPattern) {
+        private final MetaDataSnapshotHolder<IndexOrdinals> indexOrdinals;
+        private final MetaDataSnapshotHolder<AliasSnapshot> aliasSnapshots;
+        //expanded pattern (user attributes replaced) -> resolved pattern for a metadata version
+        private final Cache<String, ResolvedIndexPattern> resolvedCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_RESOLVED_INDEX_PATTERNS)
+                .build();
+
+        private IndexPattern(String indexPattern, MetaDataSnapshotHolder<IndexOrdinals> indexOrdinals,
+                MetaDataSnapshotHolder<AliasSnapshot> aliasSnapshots) {
             super();
             this.indexPattern = Objects.requireNonNull(indexPattern);
+            this.indexOrdinals = indexOrdinals;
+            this.aliasSnapshots = aliasSnapshots;
         }
 
         public IndexPattern addFlsFields(List<String> flsFields) {
@@ -579,23 +730,42 @@ public class ConfigModel {
             return replaceProperties(indexPattern, user);
         }
 
+        /**
+         * The returned array is shared and must not be modified
+         */
         private String[] getResolvedIndexPattern(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
-            String unresolved = getUnresolvedIndexPattern(user);
+            return getResolvedIndexPattern(user, resolver, cs.state()).resolved;
+        }
+
+        private ResolvedIndexPattern getResolvedIndexPattern(User user, IndexNameExpressionResolver resolver, ClusterState state) {
+            final String unresolved = getUnresolvedIndexPattern(user);
+            final long metaDataVersion = state.metaData().version();
+
+            final ResolvedIndexPattern cached = resolvedCache.getIfPresent(unresolved);
+            if(cached != null && cached.metaDataVersion == metaDataVersion) {
+                return cached;
+            }
+
+            final IndexOrdinals ordinals = indexOrdinals.get(state);
+            final String[] resolved = resolveIndexPattern(unresolved, resolver, state);
+            final ResolvedIndexPattern resolvedIndexPattern = new ResolvedIndexPattern(metaDataVersion, resolved, unresolved, ordinals);
+            resolvedCache.put(unresolved, resolvedIndexPattern);
+            return resolvedIndexPattern;
+        }
+
+        private String[] resolveIndexPattern(final String unresolved, IndexNameExpressionResolver resolver, ClusterState state) {
             String[] resolved = null;
             if(WildcardMatcher.containsWildcard(unresolved)) {
-                final String[] aliasesForPermittedPattern = cs.state().getMetaData().getAliasAndIndexLookup()        
-                        .entrySet().stream()
-                        .filter(e->e.getValue().isAlias())
-                        .filter(e->WildcardMatcher.match(unresolved, e.getKey()))
-                        .map(e->e.getKey()).toArray(String[]::new);
+                final String[] aliasesForPermittedPattern = WildcardMatcher.getMatchAny(unresolved, aliasSnapshots.get(state).getAliases())
+                        .toArray(new String[0]);
                 
                 if(aliasesForPermittedPattern != null && aliasesForPermittedPattern.length > 0) {
-                    resolved = resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), aliasesForPermittedPattern);
+                    resolved = resolver.concreteIndexNames(state, IndicesOptions.lenientExpandOpen(), aliasesForPermittedPattern);
                 }
             }
             
             if(resolved == null) {
-                resolved = resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), unresolved);
+                resolved = resolver.concreteIndexNames(state, IndicesOptions.lenientExpandOpen(), unresolved);
             }
             if(resolved == null || resolved.length == 0) {
                 return new String[]{unresolved};
@@ -611,6 +781,15 @@ public class ConfigModel {
             return replaceProperties(dlsQuery, user);
         }
 
+        private boolean hasDlsFlsOrMaskedFields() {
+            return (dlsQuery != null && dlsQuery.length() > 0) || !fls.isEmpty() || !maskedFields.isEmpty();
+        }
+
+        //index pattern or dls query contain ${user.name} or ${attr} placeholders
+        private boolean hasUserTemplates() {
+            return indexPattern.contains("${") || (dlsQuery != null && dlsQuery.contains("${"));
+        }
+
         public Set<String> getFls() {
             return Collections.unmodifiableSet(fls);
         }
@@ -627,13 +806,40 @@ public class ConfigModel {
 
     }
 
+    private static class ResolvedIndexPattern {
+        private final long metaDataVersion;
+        private final String[] resolved;
+        private final WildcardMatcher.Matcher unresolved;
+        private final IndexOrdinals ordinals;
+        //concrete indices of resolved as ordinals of the dictionary above, sparse because most patterns match few indices
+        private final SparseFixedBitSet concrete;
+
+        private ResolvedIndexPattern(long metaDataVersion, String[] resolved, String unresolved, IndexOrdinals ordinals) {
+            super();
+            this.metaDataVersion = metaDataVersion;
+            this.resolved = resolved;
+            this.unresolved = WildcardMatcher.compile(unresolved);
+            this.ordinals = ordinals;
+            this.concrete = ordinals.toBitSet(resolved);
+        }
+
+        //same as WildcardMatcher.matchAny(resolved, index) because concrete index names can not contain wildcards
+        private boolean matches(final String index) {
+            final int ordinal = ordinals.ordinal(index);
+            return (ordinal > -1 && concrete.get(ordinal)) || unresolved.matches(index);
+        }
+    }
+
     public static class TypePerm {
         private final String typePattern;
+        private final WildcardMatcher.Matcher typeMatcher;
         private final Set<String> perms = new HashSet<>();
+        private ActionMatcher permsMatcher = ActionMatcher.NONE;
 
         private TypePerm(String typePattern) {
             super();
             this.typePattern = Objects.requireNonNull(typePattern);
+            this.typeMatcher = WildcardMatcher.compile(typePattern);
             if(IGNORED_TYPES.contains(typePattern)) {
                 throw new RuntimeException("typepattern '"+typePattern+"' not allowed");
             }
@@ -642,6 +848,7 @@ public class ConfigModel {
         private TypePerm addPerms(Collection<String> perms) {
             if(perms != null) {
                 this.perms.addAll(perms);
+                this.permsMatcher = ActionMatcher.compile(this.perms);
             }
             return this;
         }
@@ -690,6 +897,14 @@ public class ConfigModel {
             return Collections.unmodifiableSet(perms);
         }
 
+        /**
+         *
+         * @return the (resolved) action permissions compiled into a matcher
+         */
+        public ActionMatcher getPermsMatcher() {
+            return permsMatcher;
+        }
+
     }
 
     public static class Tenant {
@@ -758,35 +973,70 @@ public class ConfigModel {
     }
     
     private static boolean impliesTypePerm(Set<IndexPattern> ipatterns, Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
-        Set<String> matchingIndex = new HashSet<>(resolved.getAllIndices());
+        final ClusterState state = cs.state();
+
+        //resolve each pattern once and not once per requested index
+        final Map<IndexPattern, ResolvedIndexPattern> resolvedPatterns = new HashMap<>(ipatterns.size());
+        //patterns which alone imply all requested types and actions
+        final List<ResolvedIndexPattern> fullyPermitting = new ArrayList<>(ipatterns.size());
+        for(IndexPattern p: ipatterns) {
+            final ResolvedIndexPattern rp = p.getResolvedIndexPattern(user, resolver, state);
+            resolvedPatterns.put(p, rp);
+            if(impliesTypePerm(p, resolved.getTypes(), actions, new HashSet<>(resolved.getTypes()), new HashSet<>(Arrays.asList(actions)))) {
+                fullyPermitting.add(rp);
+            }
+        }
 
         for(String in: resolved.getAllIndices()) {
+            if(matchesAny(fullyPermitting, in)) {
+                continue;
+            }
+
             //find index patterns who are matching
             Set<String> matchingActions = new HashSet<>(Arrays.asList(actions));
             Set<String> matchingTypes = new HashSet<>(resolved.getTypes());
-            for(IndexPattern p: ipatterns) {
-                if(WildcardMatcher.matchAny(p.getResolvedIndexPattern(user, resolver, cs), in)) {
+            for(Entry<IndexPattern, ResolvedIndexPattern> e: resolvedPatterns.entrySet()) {
+                if(e.getValue().matches(in)) {
                     //per resolved index per pattern
-                    for(String t: resolved.getTypes()) {
-                        for(TypePerm tp: p.typePerms) {
-                            if(WildcardMatcher.match(tp.typePattern, t)) {
-                                matchingTypes.remove(t);
-                                for(String a: Arrays.asList(actions)) {
-                                    if(WildcardMatcher.matchAny(tp.perms, a)) {
-                                        matchingActions.remove(a);
-                                    }
-                                }
-                            }
-                        }
-                    }
+                    impliesTypePerm(e.getKey(), resolved.getTypes(), actions, matchingTypes, matchingActions);
                 }
             }
 
-            if(matchingActions.isEmpty() && matchingTypes.isEmpty()) {
-                matchingIndex.remove(in);
+            if(!matchingActions.isEmpty() || !matchingTypes.isEmpty()) {
+                return false;
             }
         }
 
-        return matchingIndex.isEmpty();
+        return true;
+    }
+
+    private static boolean matchesAny(final List<ResolvedIndexPattern> resolvedPatterns, final String index) {
+        for (int i = 0; i < resolvedPatterns.size(); i++) {
+            if(resolvedPatterns.get(i).matches(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all types and actions implied by the type permissions of the index pattern
+     *
+     * @return true if no types and actions are left
+     */
+    private static boolean impliesTypePerm(IndexPattern p, Set<String> types, String[] actions, Set<String> matchingTypes, Set<String> matchingActions) {
+        for(String t: types) {
+            for(TypePerm tp: p.typePerms) {
+                if(tp.typeMatcher.matches(t)) {
+                    matchingTypes.remove(t);
+                    for(String a: actions) {
+                        if(tp.permsMatcher.matches(a)) {
+                            matchingActions.remove(a);
+                        }
+                    }
+                }
+            }
+        }
+        return matchingTypes.isEmpty() && matchingActions.isEmpty();
     }
 }
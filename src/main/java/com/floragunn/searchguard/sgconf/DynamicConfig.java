@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.Objects;
+
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Immutable, typed snapshot of the <code>searchguard.dynamic</code> part of sg_config.
+ * Built once per config change so that the hot paths never parse settings strings.
+ */
+public final class DynamicConfig {
+
+    private final Settings settings;
+    private final boolean kibanaDoNotFailOnForbidden;
+    private final boolean doNotFailOnForbidden;
+    private final boolean multiRolespanEnabled;
+    private final String hostsResolverMode;
+    private final String filteredAliasMode;
+    private final boolean kibanaMultitenancyEnabled;
+    private final String kibanaIndex;
+    private final String kibanaServerUsername;
+    private final boolean anonymousAuthEnabled;
+    private final boolean xffEnabled;
+    private final String xffInternalProxies;
+    private final String xffProxiesHeader;
+    private final String xffRemoteIpHeader;
+    private final String xffTrustedProxies;
+
+    public DynamicConfig(final Settings settings) {
+        super();
+        this.settings = Objects.requireNonNull(settings);
+        this.kibanaDoNotFailOnForbidden = settings.getAsBoolean("searchguard.dynamic.kibana.do_not_fail_on_forbidden", false);
+        this.doNotFailOnForbidden = settings.getAsBoolean("searchguard.dynamic.do_not_fail_on_forbidden", false);
+        this.multiRolespanEnabled = settings.getAsBoolean("searchguard.dynamic.multi_rolespan_enabled", false);
+        this.hostsResolverMode = settings.get("searchguard.dynamic.hosts_resolver_mode","ip-only");
+        this.filteredAliasMode = settings.get("searchguard.dynamic.filtered_alias_mode","warn");
+        this.kibanaMultitenancyEnabled = settings.getAsBoolean("searchguard.dynamic.kibana.multitenancy_enabled", true);
+        this.kibanaIndex = settings.get("searchguard.dynamic.kibana.index",".kibana");
+        this.kibanaServerUsername = settings.get("searchguard.dynamic.kibana.server_username","kibanaserver");
+        this.anonymousAuthEnabled = settings.getAsBoolean("searchguard.dynamic.http.anonymous_auth_enabled", false);
+        this.xffEnabled = settings.getAsBoolean("searchguard.dynamic.http.xff.enabled", true);
+        this.xffInternalProxies = settings.get("searchguard.dynamic.http.xff.internalProxies");
+        this.xffProxiesHeader = settings.get("searchguard.dynamic.http.xff.proxiesHeader");
+        this.xffRemoteIpHeader = settings.get("searchguard.dynamic.http.xff.remoteIpHeader");
+        this.xffTrustedProxies = settings.get("searchguard.dynamic.http.xff.trustedProxies");
+    }
+
+    /**
+     *
+     * @return the raw settings this snapshot was built from
+     */
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public boolean isKibanaDoNotFailOnForbidden() {
+        return kibanaDoNotFailOnForbidden;
+    }
+
+    /**
+     *
+     * @return true if either do_not_fail_on_forbidden or kibana.do_not_fail_on_forbidden is enabled
+     */
+    public boolean isDnfofEnabled() {
+        return kibanaDoNotFailOnForbidden || doNotFailOnForbidden;
+    }
+
+    public boolean isMultiRolespanEnabled() {
+        return multiRolespanEnabled;
+    }
+
+    public String getHostsResolverMode() {
+        return hostsResolverMode;
+    }
+
+    public String getFilteredAliasMode() {
+        return filteredAliasMode;
+    }
+
+    public boolean isKibanaMultitenancyEnabled() {
+        return kibanaMultitenancyEnabled;
+    }
+
+    public String getKibanaIndex() {
+        return kibanaIndex;
+    }
+
+    public String getKibanaServerUsername() {
+        return kibanaServerUsername;
+    }
+
+    public boolean isAnonymousAuthEnabled() {
+        return anonymousAuthEnabled;
+    }
+
+    public boolean isXffEnabled() {
+        return xffEnabled;
+    }
+
+    /**
+     *
+     * @return null if not configured
+     */
+    public String getXffInternalProxies() {
+        return xffInternalProxies;
+    }
+
+    /**
+     *
+     * @return null if not configured
+     */
+    public String getXffProxiesHeader() {
+        return xffProxiesHeader;
+    }
+
+    /**
+     *
+     * @return null if not configured
+     */
+    public String getXffRemoteIpHeader() {
+        return xffRemoteIpHeader;
+    }
+
+    /**
+     *
+     * @return null if not configured
+     */
+    public String getXffTrustedProxies() {
+        return xffTrustedProxies;
+    }
+
+    @Override
+    public String toString() {
+        return "DynamicConfig [dnfof=" + isDnfofEnabled() + ", multiRolespanEnabled=" + multiRolespanEnabled + ", hostsResolverMode="
+                + hostsResolverMode + ", filteredAliasMode=" + filteredAliasMode + ", kibanaMultitenancyEnabled=" + kibanaMultitenancyEnabled
+                + ", kibanaIndex=" + kibanaIndex + ", anonymousAuthEnabled=" + anonymousAuthEnabled + ", xffEnabled=" + xffEnabled + "]";
+    }
+}
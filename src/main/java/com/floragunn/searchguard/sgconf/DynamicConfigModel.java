@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+
+import com.floragunn.searchguard.configuration.ConfigurationChangeListener;
+import com.floragunn.searchguard.configuration.ConfigurationRepository;
+import com.floragunn.searchguard.support.ConfigConstants;
+
+/**
+ * Holds the current {@link DynamicConfig} snapshot.
+ * <p>
+ * Other listeners of sg_config pass the settings they were notified with to {@link #getDynamicConfig(Settings)}
+ * so that the snapshot is built only once per change, regardless of the order listeners are notified in.
+ */
+public class DynamicConfigModel implements ConfigurationChangeListener {
+
+    protected final Logger log = LogManager.getLogger(this.getClass());
+    private final ConfigurationRepository configurationRepository;
+    private volatile DynamicConfig dynamicConfig;
+
+    public DynamicConfigModel(final ConfigurationRepository configurationRepository) {
+        super();
+        this.configurationRepository = configurationRepository;
+    }
+
+    @Override
+    public void onChange(Settings config) {
+        final DynamicConfig _dynamicConfig = getDynamicConfig(config);
+        if(log.isDebugEnabled()) {
+            log.debug("Dynamic config changed: {}", _dynamicConfig);
+        }
+    }
+
+    /**
+     *
+     * @return the current snapshot or null if sg_config is not yet loaded
+     */
+    public DynamicConfig getDynamicConfig() {
+        final DynamicConfig _dynamicConfig = this.dynamicConfig;
+        if(_dynamicConfig != null) {
+            return _dynamicConfig;
+        }
+
+        //not yet notified about a config change
+        final Settings config = configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_CONFIG, false);
+        return config == null?null:getDynamicConfig(config);
+    }
+
+    /**
+     *
+     * @param config sg_config settings, not null
+     * @return the snapshot for exactly this settings instance
+     */
+    public DynamicConfig getDynamicConfig(final Settings config) {
+        DynamicConfig _dynamicConfig = this.dynamicConfig;
+        if(_dynamicConfig == null || _dynamicConfig.getSettings() != config) {
+            _dynamicConfig = new DynamicConfig(config);
+            this.dynamicConfig = _dynamicConfig;
+        }
+        return _dynamicConfig;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+
+import com.floragunn.searchguard.configuration.ConfigurationChangeListener;
+import com.floragunn.searchguard.configuration.ConfigurationRepository;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.WildcardMatcher;
+import com.floragunn.searchguard.user.User;
+
+/**
+ * Holds the roles mapping compiled into an inverted index so that mapping a user
+ * is proportional to the number of backend roles of the user and not to the size of the roles mapping.
+ */
+public class RolesMappingModel implements ConfigurationChangeListener {
+
+    protected final Logger log = LogManager.getLogger(this.getClass());
+    private final ConfigurationRepository configurationRepository;
+    private volatile SgRoleMappings sgRoleMappings;
+
+    public RolesMappingModel(final ConfigurationRepository configurationRepository) {
+        super();
+        this.configurationRepository = configurationRepository;
+    }
+
+    @Override
+    public void onChange(Settings rolesMapping) {
+        final SgRoleMappings _sgRoleMappings = compile(rolesMapping);
+        this.sgRoleMappings = _sgRoleMappings;
+        if(log.isDebugEnabled()) {
+            log.debug("Recompiled roles mapping: {}", _sgRoleMappings);
+        }
+    }
+
+    /**
+     *
+     * @return the compiled roles mapping or null if the roles mapping is not yet loaded
+     */
+    public SgRoleMappings getSgRoleMappings() {
+        SgRoleMappings _sgRoleMappings = this.sgRoleMappings;
+        if(_sgRoleMappings == null) {
+            //not yet notified about a config change
+            final Settings rolesMapping = configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_ROLES_MAPPING, false);
+            if(rolesMapping == null) {
+                return null;
+            }
+            _sgRoleMappings = compile(rolesMapping);
+            this.sgRoleMappings = _sgRoleMappings;
+        }
+        return _sgRoleMappings;
+    }
+
+    public static SgRoleMappings compile(final Settings rolesMapping) {
+        final Map<String, Set<String>> byBackendRole = new HashMap<>();
+        final Map<String, Set<String>> byUser = new HashMap<>();
+        final List<ResidualMapping> residual = new ArrayList<>();
+        boolean hostsRules = false;
+
+        for (final String roleMap : rolesMapping.names()) {
+            final Settings roleMapSettings = rolesMapping.getByPrefix(roleMap);
+
+            final List<String> wildcardBackendRoles = new ArrayList<>();
+            final List<String> wildcardUsers = new ArrayList<>();
+
+            for(String backendRole: roleMapSettings.getAsList(".backendroles", Collections.emptyList())) {
+                if(WildcardMatcher.containsWildcard(backendRole)) {
+                    wildcardBackendRoles.add(backendRole);
+                } else {
+                    byBackendRole.computeIfAbsent(backendRole, k->new HashSet<>()).add(roleMap);
+                }
+            }
+
+            for(String user: roleMapSettings.getAsList(".users", Collections.emptyList())) {
+                if(WildcardMatcher.containsWildcard(user)) {
+                    wildcardUsers.add(user);
+                } else {
+                    byUser.computeIfAbsent(user, k->new HashSet<>()).add(roleMap);
+                }
+            }
+
+            final List<String> andBackendRoles = roleMapSettings.getAsList(".and_backendroles", Collections.emptyList());
+            final List<String> hosts = roleMapSettings.getAsList(".hosts", Collections.emptyList());
+
+            if(!wildcardBackendRoles.isEmpty() || !wildcardUsers.isEmpty() || !andBackendRoles.isEmpty() || !hosts.isEmpty()) {
+                residual.add(new ResidualMapping(roleMap, andBackendRoles, wildcardBackendRoles, wildcardUsers, hosts));
+                hostsRules = hostsRules || !hosts.isEmpty();
+            }
+        }
+
+        return new SgRoleMappings(byBackendRole, byUser, residual, hostsRules);
+    }
+
+    public static class SgRoleMappings {
+
+        private final Map<String, Set<String>> byBackendRole;
+        private final Map<String, Set<String>> byUser;
+        private final List<ResidualMapping> residual;
+        private final boolean hostsRules;
+
+        private SgRoleMappings(Map<String, Set<String>> byBackendRole, Map<String, Set<String>> byUser,
+                List<ResidualMapping> residual, boolean hostsRules) {
+            super();
+            this.byBackendRole = byBackendRole;
+            this.byUser = byUser;
+            this.residual = residual;
+            this.hostsRules = hostsRules;
+        }
+
+        /**
+         *
+         * @return true if at least one mapping depends on the callers address
+         */
+        public boolean hasHostsRules() {
+            return hostsRules;
+        }
+
+        /**
+         * Add all sg roles the user and caller are mapped to
+         *
+         * @param user not null
+         * @param caller can be null
+         * @param hostResolverMode ip-only, ip-hostname or ip-hostname-lookup
+         * @param sgRoles will be modified
+         */
+        public void map(final User user, final TransportAddress caller, final String hostResolverMode, final Set<String> sgRoles) {
+            final Set<String> backendRoles = user.getRoles();
+
+            addAll(sgRoles, byUser.get(user.getName()));
+
+            for(String backendRole: backendRoles) {
+                addAll(sgRoles, byBackendRole.get(backendRole));
+            }
+
+            if(residual.isEmpty()) {
+                return;
+            }
+
+            final String[] backendRolesA = backendRoles.toArray(new String[0]);
+
+            for(ResidualMapping rm: residual) {
+                if(!sgRoles.contains(rm.sgRole) && rm.matches(user.getName(), backendRolesA, caller, hostResolverMode)) {
+                    sgRoles.add(rm.sgRole);
+                }
+            }
+        }
+
+        private static void addAll(final Set<String> sgRoles, final Set<String> mapped) {
+            if(mapped != null) {
+                sgRoles.addAll(mapped);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SgRoleMappings [backendRoles=" + byBackendRole.size() + ", users=" + byUser.size() + ", residual=" + residual.size()
+                    + ", hostsRules=" + hostsRules + "]";
+        }
+    }
+
+    //wildcard, regex, and_backendroles and hosts rules which can not be looked up by key
+    private static class ResidualMapping {
+        private final String sgRole;
+        private final WildcardMatcher.Matcher[] andBackendRoles;
+        private final WildcardMatcher.Matcher backendRoles;
+        private final WildcardMatcher.Matcher users;
+        private final WildcardMatcher.Matcher hosts;
+        private final boolean hasHosts;
+
+        private ResidualMapping(String sgRole, List<String> andBackendRoles, List<String> backendRoles, List<String> users, List<String> hosts) {
+            super();
+            this.sgRole = sgRole;
+            this.andBackendRoles = WildcardMatcher.compile(andBackendRoles);
+            this.backendRoles = WildcardMatcher.compileSet(backendRoles);
+            this.users = WildcardMatcher.compileSet(users);
+            this.hosts = WildcardMatcher.compileSet(hosts);
+            this.hasHosts = !hosts.isEmpty();
+        }
+
+        private boolean matches(final String userName, final String[] userBackendRoles, final TransportAddress caller, final String hostResolverMode) {
+
+            if (allPatternsMatched(andBackendRoles, userBackendRoles)) {
+                return true;
+            }
+
+            if (backendRoles.matchesAny(userBackendRoles)) {
+                return true;
+            }
+
+            if (users.matches(userName)) {
+                return true;
+            }
+
+            if(caller != null && hasHosts) {
+                //IPV4 or IPv6 (compressed and without scope identifiers)
+                if (hosts.matches(caller.getAddress())) {
+                    return true;
+                }
+
+                if(caller.address() != null && (hostResolverMode.equalsIgnoreCase("ip-hostname") || hostResolverMode.equalsIgnoreCase("ip-hostname-lookup"))){
+                    if (hosts.matches(caller.address().getHostString())) {
+                        return true;
+                    }
+                }
+
+                if(caller.address() != null && hostResolverMode.equalsIgnoreCase("ip-hostname-lookup")){
+                    //reverse lookup
+                    if (hosts.matches(caller.address().getHostName())) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        //same as WildcardMatcher.allPatternsMatched()
+        private static boolean allPatternsMatched(final WildcardMatcher.Matcher[] patterns, final String[] candidates) {
+            for (int i = 0; i < patterns.length; i++) {
+                if (!patterns[i].matchesAny(candidates)) {
+                    return false;
+                }
+            }
+            return patterns.length > 0;
+        }
+    }
+}
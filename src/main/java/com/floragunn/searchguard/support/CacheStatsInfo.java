@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Point in time statistics of a cache which records stats, transportable to other nodes.
+ */
+public final class CacheStatsInfo implements Writeable, ToXContentObject {
+
+    private final long size;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long loadSuccessCount;
+    private final long loadExceptionCount;
+    private final long totalLoadTimeNanos;
+
+    private CacheStatsInfo(final long size, final CacheStats stats) {
+        this.size = size;
+        this.hitCount = stats.hitCount();
+        this.missCount = stats.missCount();
+        this.evictionCount = stats.evictionCount();
+        this.loadSuccessCount = stats.loadSuccessCount();
+        this.loadExceptionCount = stats.loadExceptionCount();
+        this.totalLoadTimeNanos = stats.totalLoadTime();
+    }
+
+    public CacheStatsInfo(final StreamInput in) throws IOException {
+        this.size = in.readVLong();
+        this.hitCount = in.readVLong();
+        this.missCount = in.readVLong();
+        this.evictionCount = in.readVLong();
+        this.loadSuccessCount = in.readVLong();
+        this.loadExceptionCount = in.readVLong();
+        this.totalLoadTimeNanos = in.readVLong();
+    }
+
+    /**
+     *
+     * @param cache maybe null
+     * @return the current statistics of the cache, null if the cache is null
+     */
+    public static CacheStatsInfo of(final Cache<?, ?> cache) {
+        return cache == null?null:new CacheStatsInfo(cache.size(), cache.stats());
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRatio() {
+        final long requestCount = hitCount + missCount;
+        return requestCount == 0?1.0:(double) hitCount / requestCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadExceptionCount() {
+        return loadExceptionCount;
+    }
+
+    public long getTotalLoadTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalLoadTimeNanos);
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        out.writeVLong(size);
+        out.writeVLong(hitCount);
+        out.writeVLong(missCount);
+        out.writeVLong(evictionCount);
+        out.writeVLong(loadSuccessCount);
+        out.writeVLong(loadExceptionCount);
+        out.writeVLong(totalLoadTimeNanos);
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+        builder.startObject();
+        builder.field("size", size);
+        builder.field("hit_count", hitCount);
+        builder.field("miss_count", missCount);
+        builder.field("hit_ratio", getHitRatio());
+        builder.field("eviction_count", evictionCount);
+        builder.field("load_success_count", loadSuccessCount);
+        builder.field("load_exception_count", loadExceptionCount);
+        builder.field("total_load_time_in_millis", getTotalLoadTimeMillis());
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatsInfo [size=" + size + ", hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                + ", loadSuccessCount=" + loadSuccessCount + ", loadExceptionCount=" + loadExceptionCount + ", totalLoadTimeNanos="
+                + totalLoadTimeNanos + "]";
+    }
+}
@@ -117,6 +117,9 @@ public class ConfigConstants {
     public static final String SEARCHGUARD_AUDIT_CONFIG_ENDPOINTS = "searchguard.audit.endpoints";
     public static final String SEARCHGUARD_AUDIT_THREADPOOL_SIZE = "searchguard.audit.threadpool.size";
     public static final String SEARCHGUARD_AUDIT_THREADPOOL_MAX_QUEUE_LEN = "searchguard.audit.threadpool.max_queue_len";
+    public static final String SEARCHGUARD_AUTH_THREADPOOL_NAME = "searchguard_auth";
+    //the thread pool registers <prefix>.size and <prefix>.queue_size
+    public static final String SEARCHGUARD_AUTH_THREADPOOL_PREFIX = "searchguard.auth.threadpool";
     public static final String SEARCHGUARD_AUDIT_LOG_REQUEST_BODY = "searchguard.audit.log_request_body";
     public static final String SEARCHGUARD_AUDIT_RESOLVE_INDICES = "searchguard.audit.resolve_indices";
     public static final String SEARCHGUARD_AUDIT_ENABLE_REST = "searchguard.audit.enable_rest";
@@ -175,6 +178,15 @@ public class ConfigConstants {
     public static final String SEARCHGUARD_NODES_DN = "searchguard.nodes_dn";
     public static final String SEARCHGUARD_DISABLED = "searchguard.disabled";
     public static final String SEARCHGUARD_CACHE_TTL_MINUTES = "searchguard.cache.ttl_minutes";
+    public static final String SEARCHGUARD_CACHE_USERS_MAX_SIZE = "searchguard.cache.users.max_size";
+    public static final String SEARCHGUARD_CACHE_USERS_MAX_WEIGHT = "searchguard.cache.users.max_weight";
+    public static final String SEARCHGUARD_CACHE_USERS_CONCURRENCY_LEVEL = "searchguard.cache.users.concurrency_level";
+    public static final String SEARCHGUARD_CACHE_EFFECTIVE_PERMISSIONS_MAX_SIZE = "searchguard.cache.effective_permissions.max_size";
+    public static final String SEARCHGUARD_CACHE_DLS_FLS_MAX_SIZE = "searchguard.cache.dls_fls.max_size";
+    public static final String SEARCHGUARD_CACHE_DECISIONS_MAX_SIZE = "searchguard.cache.decisions.max_size";
+    public static final String SEARCHGUARD_CACHE_RESOLVED_INDICES_MAX_SIZE = "searchguard.cache.resolved_indices.max_size";
+    public static final String SEARCHGUARD_CACHE_FAILED_AUTHENTICATIONS_MAX_SIZE = "searchguard.cache.failed_authentications.max_size";
+    public static final String SEARCHGUARD_CACHE_FAILED_AUTHENTICATIONS_TTL_SECONDS = "searchguard.cache.failed_authentications.ttl_seconds";
     public static final String SEARCHGUARD_ALLOW_UNSAFE_DEMOCERTIFICATES = "searchguard.allow_unsafe_democertificates";
     public static final String SEARCHGUARD_ALLOW_DEFAULT_INIT_SGINDEX = "searchguard.allow_default_init_sgindex";
 
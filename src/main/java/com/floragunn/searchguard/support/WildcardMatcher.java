@@ -19,11 +19,22 @@ package com.floragunn.searchguard.support;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
 
 public class WildcardMatcher {
 
@@ -241,6 +252,84 @@ public class WildcardMatcher {
         return matches;
     }
 
+    /**
+     * Like {@link #getMatchAny(String, Collection)} but for sorted candidates only the range
+     * which starts with the literal prefix of the pattern is scanned.
+     * Falls back to a full scan for regex patterns and patterns starting with a wildcard.
+     *
+     * @param pattern
+     * @param candidate
+     * @return the matching candidates in sorted order
+     */
+    public static List<String> getMatchAny(final String pattern, final NavigableSet<String> candidate) {
+
+        if (pattern == null) {
+            return new ArrayList<String>(0);
+        }
+
+        if (pattern.startsWith("/") && pattern.endsWith("/")) {
+            return getMatchAny(pattern, (Collection<String>) candidate);
+        }
+
+        final int firstWildcard = indexOfWildcard(pattern);
+
+        if (firstWildcard == NOT_FOUND) {
+            final List<String> matches = new ArrayList<String>(1);
+            if (candidate.contains(pattern)) {
+                matches.add(pattern);
+            }
+            return matches;
+        }
+
+        if (firstWildcard == 0) {
+            return getMatchAny(pattern, (Collection<String>) candidate);
+        }
+
+        final String prefix = pattern.substring(0, firstWildcard);
+        final List<String> matches = new ArrayList<String>();
+
+        for (final String string: candidate.tailSet(prefix, true)) {
+            if (!string.startsWith(prefix)) {
+                break;
+            }
+            if (match(pattern, string)) {
+                matches.add(string);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Like {@link #getMatchAny(String[], Collection)} but uses prefix range scans, see {@link #getMatchAny(String, NavigableSet)}
+     *
+     * @param patterns
+     * @param candidate
+     * @return the matching candidates in sorted order
+     */
+    public static List<String> getMatchAny(final String[] patterns, final NavigableSet<String> candidate) {
+
+        final Set<String> matches = new TreeSet<String>();
+
+        for (int i = 0; i < patterns.length; i++) {
+            matches.addAll(getMatchAny(patterns[i], candidate));
+        }
+
+        return new ArrayList<String>(matches);
+    }
+
+    private static int indexOfWildcard(final String pattern) {
+        final int star = pattern.indexOf('*');
+        final int questionMark = pattern.indexOf('?');
+        if (star == NOT_FOUND) {
+            return questionMark;
+        }
+        if (questionMark == NOT_FOUND) {
+            return star;
+        }
+        return Math.min(star, questionMark);
+    }
+
     /**
      * returns true if the candidate matches at least one pattern
      *
@@ -288,20 +377,20 @@ public class WildcardMatcher {
             return false;
         }
 
-        if(ignoreCase) {
-            pattern = pattern.toLowerCase();
-            candidate = candidate.toLowerCase();
-        }
-
         if (pattern.startsWith("/") && pattern.endsWith("/")) {
+            if(ignoreCase) {
+                pattern = pattern.toLowerCase();
+                candidate = candidate.toLowerCase();
+            }
             // regex
             return Pattern.matches("^"+pattern.substring(1, pattern.length() - 1)+"$", candidate);
         } else if (pattern.length() == 1 && pattern.charAt(0) == '*') {
             return true;
         } else if (pattern.indexOf('?') == NOT_FOUND && pattern.indexOf('*') == NOT_FOUND) {
-            return pattern.equals(candidate);
+            return ignoreCase?pattern.equalsIgnoreCase(candidate):pattern.equals(candidate);
         } else {
-            return simpleWildcardMatch(pattern, candidate);
+            //region matches, no lower cased copies needed
+            return simpleWildcardMatch(splitOnTokens(pattern), candidate, ignoreCase);
         }
     }
 
@@ -362,6 +451,468 @@ public class WildcardMatcher {
     }
 
 
+    /**
+     * Compile a pattern into an immutable matcher which is equivalent to {@link #match(String, String)} with this pattern
+     * but does not inspect the pattern again on every call. Regex patterns are compiled only once.
+     *
+     * @param pattern exact value, wildcard pattern or /regex/
+     * @return the matcher, never null
+     */
+    public static Matcher compile(final String pattern) {
+        return compile(pattern, false);
+    }
+
+    /**
+     * Like {@link #compile(String)} but equivalent to {@link #match(String, String, boolean)}.
+     * If ignoreCase is true the pattern is lower cased once and candidates are compared with
+     * case insensitive region matches, so matching does not allocate lower cased copies of the candidate.
+     *
+     * @param pattern exact value, wildcard pattern or /regex/
+     * @param ignoreCase
+     * @return the matcher, never null
+     */
+    public static Matcher compile(String pattern, final boolean ignoreCase) {
+        if (pattern == null) {
+            return Matcher.NONE;
+        }
+
+        if (ignoreCase) {
+            pattern = pattern.toLowerCase();
+        }
+
+        if (pattern.length() > 1 && pattern.startsWith("/") && pattern.endsWith("/")) {
+            try {
+                return new RegexMatcher(pattern, Pattern.compile("^"+pattern.substring(1, pattern.length() - 1)+"$",
+                        ignoreCase?Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE:0));
+            } catch (PatternSyntaxException e) {
+                //fail on matching like match() does
+                return new GlobMatcher(pattern, null, ignoreCase);
+            }
+        }
+
+        if (pattern.indexOf('?') == NOT_FOUND && pattern.indexOf('*') == NOT_FOUND) {
+            return new ExactMatcher(pattern, ignoreCase);
+        }
+
+        int start = 0;
+        int end = pattern.length();
+        while (start < end && pattern.charAt(start) == '*') {
+            start++;
+        }
+
+        if (start == end) {
+            return new AllMatcher(pattern);
+        }
+
+        while (pattern.charAt(end - 1) == '*') {
+            end--;
+        }
+
+        final String inner = pattern.substring(start, end);
+
+        if (inner.indexOf('?') == NOT_FOUND && inner.indexOf('*') == NOT_FOUND) {
+            if (start == 0) {
+                return new PrefixMatcher(pattern, inner, ignoreCase);
+            } else if (end == pattern.length()) {
+                return new SuffixMatcher(pattern, inner, ignoreCase);
+            } else {
+                return new ContainsMatcher(pattern, inner, ignoreCase);
+            }
+        }
+
+        return new GlobMatcher(pattern, splitOnTokens(pattern), ignoreCase);
+    }
+
+    /**
+     *
+     * @param patterns
+     * @return the compiled patterns, never null
+     */
+    public static Matcher[] compile(final Collection<String> patterns) {
+        return compile(patterns, false);
+    }
+
+    /**
+     *
+     * @param patterns
+     * @param ignoreCase
+     * @return the compiled patterns, never null
+     */
+    public static Matcher[] compile(final Collection<String> patterns, final boolean ignoreCase) {
+        if (patterns == null || patterns.isEmpty()) {
+            return new Matcher[0];
+        }
+
+        final Matcher[] matchers = new Matcher[patterns.size()];
+        int i = 0;
+        for (String pattern: patterns) {
+            matchers[i++] = compile(pattern, ignoreCase);
+        }
+        return matchers;
+    }
+
+    /**
+     * returns true if the candidate matches at least one matcher
+     *
+     * @param matchers
+     * @param candidate
+     * @return
+     */
+    public static boolean matchAny(final Matcher[] matchers, final String candidate) {
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i].matches(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * returns true if at least one candidate matches at least one matcher
+     *
+     * @param matchers
+     * @param candidates
+     * @return
+     */
+    public static boolean matchAny(final Matcher[] matchers, final Collection<String> candidates) {
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i].matchesAny(candidates)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compile patterns into a single matcher which matches if at least one of the patterns matches.
+     * <p>
+     * Exact patterns are hash lookups, <code>prefix*</code> patterns are kept in a trie and
+     * the other wildcard patterns are combined into one automaton, so a candidate is checked in one pass
+     * independent of the number of patterns. Only regex patterns are matched one by one.
+     *
+     * @param patterns
+     * @return the matcher, never null
+     */
+    public static Matcher compileSet(final Collection<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return Matcher.NONE;
+        }
+
+        if (patterns.size() == 1) {
+            return compile(patterns.iterator().next());
+        }
+
+        return new MatcherSet(patterns);
+    }
+
+    /**
+     * Immutable compiled pattern, see {@link WildcardMatcher#compile(String)}
+     */
+    public static abstract class Matcher {
+
+        public static final Matcher NONE = new Matcher(null) {
+            @Override
+            public boolean matches(String candidate) {
+                return false;
+            }
+        };
+
+        private final String pattern;
+
+        private Matcher(final String pattern) {
+            this.pattern = pattern;
+        }
+
+        /**
+         *
+         * @param candidate
+         * @return true if the candidate matches this pattern (case sensitive)
+         */
+        public abstract boolean matches(String candidate);
+
+        public boolean matchesAny(final String[] candidates) {
+            for (int i = 0; i < candidates.length; i++) {
+                if (matches(candidates[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean matchesAny(final Collection<String> candidates) {
+            for (String candidate: candidates) {
+                if (matches(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        @Override
+        public String toString() {
+            return pattern;
+        }
+    }
+
+    private static final class AllMatcher extends Matcher {
+
+        private AllMatcher(final String pattern) {
+            super(pattern);
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            return candidate != null;
+        }
+    }
+
+    private static final class ExactMatcher extends Matcher {
+        private final boolean ignoreCase;
+
+        private ExactMatcher(final String pattern, final boolean ignoreCase) {
+            super(pattern);
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            return ignoreCase?getPattern().equalsIgnoreCase(candidate):getPattern().equals(candidate);
+        }
+    }
+
+    private static final class PrefixMatcher extends Matcher {
+        private final String prefix;
+        private final boolean ignoreCase;
+
+        private PrefixMatcher(final String pattern, final String prefix, final boolean ignoreCase) {
+            super(pattern);
+            this.prefix = prefix;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            return candidate != null && candidate.regionMatches(ignoreCase, 0, prefix, 0, prefix.length());
+        }
+    }
+
+    private static final class SuffixMatcher extends Matcher {
+        private final String suffix;
+        private final boolean ignoreCase;
+
+        private SuffixMatcher(final String pattern, final String suffix, final boolean ignoreCase) {
+            super(pattern);
+            this.suffix = suffix;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            return candidate != null && candidate.regionMatches(ignoreCase, candidate.length() - suffix.length(), suffix, 0, suffix.length());
+        }
+    }
+
+    private static final class ContainsMatcher extends Matcher {
+        private final String infix;
+        private final boolean ignoreCase;
+
+        private ContainsMatcher(final String pattern, final String infix, final boolean ignoreCase) {
+            super(pattern);
+            this.infix = infix;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            if (candidate == null) {
+                return false;
+            }
+            if (!ignoreCase) {
+                return candidate.contains(infix);
+            }
+            return checkIndexOf(candidate, 0, infix, true) != NOT_FOUND;
+        }
+    }
+
+    private static final class RegexMatcher extends Matcher {
+        private final Pattern regex;
+
+        private RegexMatcher(final String pattern, final Pattern regex) {
+            super(pattern);
+            this.regex = regex;
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            return candidate != null && regex.matcher(candidate).matches();
+        }
+    }
+
+    private static final class GlobMatcher extends Matcher {
+        //null if this is a (broken) regex
+        private final String[] tokens;
+        private final boolean ignoreCase;
+
+        private GlobMatcher(final String pattern, final String[] tokens, final boolean ignoreCase) {
+            super(pattern);
+            this.tokens = tokens;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            if (tokens == null) {
+                return match(getPattern(), candidate, ignoreCase);
+            }
+            return candidate != null && simpleWildcardMatch(tokens, candidate, ignoreCase);
+        }
+    }
+
+    private static final class MatcherSet extends Matcher {
+        private final boolean matchAll;
+        private final Set<String> exact = new HashSet<>();
+        private final PrefixNode prefixes = new PrefixNode();
+        //null if there are no such patterns
+        private final CharacterRunAutomaton automaton;
+        //patterns which are in the automaton, used for candidates with surrogate pairs
+        private final Matcher[] automatonPatterns;
+        private final Matcher[] others;
+
+        private MatcherSet(final Collection<String> patterns) {
+            super(patterns.toString());
+
+            boolean matchAll = false;
+            final List<Matcher> automatonPatterns = new ArrayList<>();
+            final List<Automaton> automata = new ArrayList<>();
+            final List<Matcher> others = new ArrayList<>();
+
+            for (String pattern: patterns) {
+                final Matcher matcher = compile(pattern);
+
+                if (matcher instanceof AllMatcher) {
+                    matchAll = true;
+                } else if (matcher instanceof ExactMatcher) {
+                    exact.add(pattern);
+                } else if (matcher instanceof PrefixMatcher) {
+                    prefixes.add(((PrefixMatcher) matcher).prefix);
+                } else if (matcher instanceof RegexMatcher || matcher == Matcher.NONE
+                        || (matcher instanceof GlobMatcher && ((GlobMatcher) matcher).tokens == null)
+                        || pattern.contains("*?")) {
+                    //regex, broken regex or *? which simpleWildcardMatch() does not handle like an automaton would
+                    others.add(matcher);
+                } else {
+                    automatonPatterns.add(matcher);
+                    automata.add(toAutomaton(pattern));
+                }
+            }
+
+            CharacterRunAutomaton automaton = null;
+            if (!automata.isEmpty()) {
+                try {
+                    automaton = new CharacterRunAutomaton(Operations.union(automata));
+                } catch (TooComplexToDeterminizeException e) {
+                    others.addAll(automatonPatterns);
+                    automatonPatterns.clear();
+                }
+            }
+
+            this.matchAll = matchAll;
+            this.automaton = automaton;
+            this.automatonPatterns = automatonPatterns.toArray(new Matcher[0]);
+            this.others = others.toArray(new Matcher[0]);
+        }
+
+        private static Automaton toAutomaton(final String pattern) {
+            final String[] tokens = splitOnTokens(pattern);
+            final List<Automaton> automata = new ArrayList<>(tokens.length);
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i].equals("*")) {
+                    automata.add(Automata.makeAnyString());
+                } else if (tokens[i].equals("?")) {
+                    automata.add(Automata.makeAnyChar());
+                } else {
+                    automata.add(Automata.makeString(tokens[i]));
+                }
+            }
+            return Operations.concatenate(automata);
+        }
+
+        @Override
+        public boolean matches(final String candidate) {
+            if (candidate == null) {
+                return false;
+            }
+
+            if (matchAll || exact.contains(candidate) || prefixes.matchesPrefixOf(candidate)) {
+                return true;
+            }
+
+            if (automaton != null) {
+                //the automaton works on code points, but ? matches a single char
+                if (hasSurrogates(candidate) ? matchAny(automatonPatterns, candidate) : automaton.run(candidate)) {
+                    return true;
+                }
+            }
+
+            return matchAny(others, candidate);
+        }
+
+        private static boolean hasSurrogates(final String candidate) {
+            for (int i = 0; i < candidate.length(); i++) {
+                if (Character.isSurrogate(candidate.charAt(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "MatcherSet [matchAll=" + matchAll + ", exact=" + exact.size() + ", prefixes=" + prefixes.size
+                    + ", automaton=" + automatonPatterns.length + ", others=" + others.length + "]";
+        }
+    }
+
+    //trie of prefixes, one pass over the candidate finds all prefixes of it
+    private static final class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>(4);
+        private boolean terminal;
+        private int size;
+
+        private void add(final String prefix) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c->new PrefixNode());
+            }
+            if (!node.terminal) {
+                node.terminal = true;
+                size++;
+            }
+        }
+
+        private boolean matchesPrefixOf(final String candidate) {
+            if (size == 0) {
+                return false;
+            }
+
+            PrefixNode node = this;
+            for (int i = 0; i < candidate.length(); i++) {
+                node = node.children.get(candidate.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     //All code below is copied (and slightly modified) from Apache Commons IO
 
     /*
@@ -382,36 +933,16 @@ public class WildcardMatcher {
      */
 
 
-    /**
-     * Checks a filename to see if it matches the specified wildcard matcher
-     * allowing control over case-sensitivity.
-     * <p>
-     * The wildcard matcher uses the characters '?' and '*' to represent a
-     * single or multiple (zero or more) wildcard characters.
-     * N.B. the sequence "*?" does not work properly at present in match strings.
-     *
-     * @param candidate  the filename to match on
-     * @param pattern  the wildcard string to match against
-     * @return true if the filename matches the wilcard string
-     * @since 1.3
-     */
-    private static boolean simpleWildcardMatch(final String pattern, final String candidate) {
-        if (candidate == null && pattern == null) {
-            return true;
-        }
-        if (candidate == null || pattern == null) {
-            return false;
-        }
-
-        final String[] wcs = splitOnTokens(pattern);
+    private static boolean simpleWildcardMatch(final String[] wcs, final String candidate, final boolean ignoreCase) {
         boolean anyChars = false;
         int textIdx = 0;
         int wcsIdx = 0;
-        final Stack<int[]> backtrack = new Stack<>();
+        //only allocated if needed
+        Stack<int[]> backtrack = null;
 
         // loop around a backtrack stack, to handle complex * matching
         do {
-            if (backtrack.size() > 0) {
+            if (backtrack != null && backtrack.size() > 0) {
                 final int[] array = backtrack.pop();
                 wcsIdx = array[0];
                 textIdx = array[1];
@@ -440,18 +971,21 @@ public class WildcardMatcher {
                     // matching text token
                     if (anyChars) {
                         // any chars then try to locate text token
-                        textIdx = checkIndexOf(candidate, textIdx, wcs[wcsIdx]);
+                        textIdx = checkIndexOf(candidate, textIdx, wcs[wcsIdx], ignoreCase);
                         if (textIdx == NOT_FOUND) {
                             // token not found
                             break;
                         }
-                        final int repeat = checkIndexOf(candidate, textIdx + 1, wcs[wcsIdx]);
+                        final int repeat = checkIndexOf(candidate, textIdx + 1, wcs[wcsIdx], ignoreCase);
                         if (repeat >= 0) {
+                            if (backtrack == null) {
+                                backtrack = new Stack<>();
+                            }
                             backtrack.push(new int[] {wcsIdx, repeat});
                         }
                     } else {
                         // matching from current position
-                        if (!checkRegionMatches(candidate, textIdx, wcs[wcsIdx])) {
+                        if (!checkRegionMatches(candidate, textIdx, wcs[wcsIdx], ignoreCase)) {
                             // couldnt match token
                             break;
                         }
@@ -470,7 +1004,7 @@ public class WildcardMatcher {
                 return true;
             }
 
-        } while (backtrack.size() > 0);
+        } while (backtrack != null && backtrack.size() > 0);
 
         return false;
     }
@@ -528,16 +1062,17 @@ public class WildcardMatcher {
      * @param str  the string to check, not null
      * @param strStartIndex  the index to start at in str
      * @param search  the start to search for, not null
+     * @param ignoreCase  whether to compare case insensitive
      * @return the first index of the search String,
      *  -1 if no match or {@code null} string input
      * @throws NullPointerException if either string is null
      * @since 2.0
      */
-    private static int checkIndexOf(final String str, final int strStartIndex, final String search) {
+    private static int checkIndexOf(final String str, final int strStartIndex, final String search, final boolean ignoreCase) {
         final int endIndex = str.length() - search.length();
         if (endIndex >= strStartIndex) {
             for (int i = strStartIndex; i <= endIndex; i++) {
-                if (checkRegionMatches(str, i, search)) {
+                if (checkRegionMatches(str, i, search, ignoreCase)) {
                     return i;
                 }
             }
@@ -554,10 +1089,11 @@ public class WildcardMatcher {
      * @param str  the string to check, not null
      * @param strStartIndex  the index to start at in str
      * @param search  the start to search for, not null
+     * @param ignoreCase  whether to compare case insensitive
      * @return true if equal using the case rules
      * @throws NullPointerException if either string is null
      */
-    private static boolean checkRegionMatches(final String str, final int strStartIndex, final String search) {
-        return str.regionMatches(false, strStartIndex, search, 0, search.length());
+    private static boolean checkRegionMatches(final String str, final int strStartIndex, final String search, final boolean ignoreCase) {
+        return str.regionMatches(ignoreCase, strStartIndex, search, 0, search.length());
     }
 }
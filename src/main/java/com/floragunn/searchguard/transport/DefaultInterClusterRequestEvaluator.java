@@ -38,27 +38,24 @@ public final class DefaultInterClusterRequestEvaluator implements InterClusterRe
     private final Logger log = LogManager.getLogger(this.getClass());
     private final String certOid;
     private final List<String> nodesDn;
+    private final WildcardMatcher.Matcher[] nodesDnMatchers;
 
     public DefaultInterClusterRequestEvaluator(final Settings settings) {
         this.certOid = settings.get(ConfigConstants.SEARCHGUARD_CERT_OID, "1.2.3.4.5.5");
         this.nodesDn = settings.getAsList(ConfigConstants.SEARCHGUARD_NODES_DN, Collections.emptyList());
+        this.nodesDnMatchers = WildcardMatcher.compile(nodesDn, true);
     }
 
     @Override
     public boolean isInterClusterRequest(TransportRequest request, X509Certificate[] localCerts, X509Certificate[] peerCerts,
             final String principal) {
         
-        String[] principals = new String[2];
-        
-        if (principal != null && principal.length() > 0) {
-            principals[0] = principal;
-            principals[1] = principal.replace(" ","");
-        }
-        
-        if (principals[0] != null && WildcardMatcher.matchAny(nodesDn, principals, true)) {
+        //also try the principal without spaces, but only copy it if there are spaces
+        if (principal != null && principal.length() > 0 && (WildcardMatcher.matchAny(nodesDnMatchers, principal)
+                || (principal.indexOf(' ') > -1 && WildcardMatcher.matchAny(nodesDnMatchers, principal.replace(" ",""))))) {
             
             if (log.isTraceEnabled()) {
-                log.trace("Treat certificate with principal {} as other node because of it matches one of {}", Arrays.toString(principals),
+                log.trace("Treat certificate with principal {} as other node because of it matches one of {}", principal,
                         nodesDn);
             }
             
@@ -66,7 +63,7 @@ public final class DefaultInterClusterRequestEvaluator implements InterClusterRe
             
         } else {
             if (log.isTraceEnabled()) {
-                log.trace("Treat certificate with principal {} NOT as other node because we it does not matches one of {}", Arrays.toString(principals),
+                log.trace("Treat certificate with principal {} NOT as other node because we it does not matches one of {}", principal,
                         nodesDn);
             }
         }
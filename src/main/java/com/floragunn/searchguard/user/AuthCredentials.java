@@ -136,6 +136,14 @@ public final class AuthCredentials {
         return username;
     }
 
+    /**
+     *
+     * @return true if the credentials contain a password, only such credentials can be equal to other credentials
+     */
+    public boolean hasPasswordDigest() {
+        return internalPasswordHash != null;
+    }
+
     /**
      *
      * @return Defensive copy of the password
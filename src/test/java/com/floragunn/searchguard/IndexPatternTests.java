@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.floragunn.searchguard.configuration.ActionGroupHolder;
+import com.floragunn.searchguard.configuration.ClusterInfoHolder;
+import com.floragunn.searchguard.configuration.ConfigurationRepository;
+import com.floragunn.searchguard.resolver.IndexResolverReplacer;
+import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
+import com.floragunn.searchguard.sgconf.ConfigModel;
+import com.floragunn.searchguard.sgconf.ConfigModel.SgRoles;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.user.User;
+
+public class IndexPatternTests {
+
+    private static final String[] READ = new String[]{"indices:data/read/search"};
+
+    private final IndexNameExpressionResolver resolver = new IndexNameExpressionResolver(Settings.EMPTY);
+    private final ClusterService cs = mock(ClusterService.class);
+    private final ConfigurationRepository cr = mock(ConfigurationRepository.class);
+    private final User user = new User("logreader");
+    private IndexResolverReplacer irr;
+    private SgRoles sgRoles;
+
+    @Before
+    public void setup() {
+        when(cr.getConfiguration(ConfigConstants.CONFIGNAME_ACTION_GROUPS, false)).thenReturn(Settings.EMPTY);
+        when(cr.getConfiguration(ConfigConstants.CONFIGNAME_ROLES, false)).thenReturn(Settings.builder()
+                .putList("sg_logs.indices.logs-*.*", "indices:data/read/*")
+                .putList("sg_logs.indices.logalias*.*", "indices:data/read/*")
+                .build());
+        irr = new IndexResolverReplacer(resolver, cs, new ClusterInfoHolder(), Settings.EMPTY);
+        sgRoles = new ConfigModel(new ActionGroupHolder(cr), cr, irr.getAliasSnapshots()).getSgRoles();
+    }
+
+    @Test
+    public void testResolvedOncePerMetaDataVersion() {
+        //other-1 is only permitted through the logalias alias
+        setState(1L, false);
+        Assert.assertTrue(isPermitted("logs-1"));
+        Assert.assertFalse(isPermitted("other-1"));
+
+        setState(2L, true);
+        Assert.assertTrue(isPermitted("other-1"));
+
+        //same metadata version, so the resolved index patterns are reused
+        setState(2L, false);
+        Assert.assertTrue(isPermitted("other-1"));
+
+        setState(3L, false);
+        Assert.assertFalse(isPermitted("other-1"));
+        Assert.assertTrue(isPermitted("logs-1"));
+    }
+
+    private boolean isPermitted(final String index) {
+        final Resolved resolved = irr.resolveRequest(new GetIndexRequest().indices(index));
+        Assert.assertTrue(resolved.getAllIndices().contains(index));
+        return sgRoles.get(resolved, user, READ, resolver, cs);
+    }
+
+    private void setState(final long version, final boolean alias) {
+        final Settings indexSettings = Settings.builder()
+                .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .build();
+
+        final IndexMetaData.Builder other = IndexMetaData.builder("other-1").settings(indexSettings);
+        if(alias) {
+            other.putAlias(AliasMetaData.builder("logalias"));
+        }
+
+        final MetaData.Builder metaData = MetaData.builder().version(version)
+                .put(IndexMetaData.builder("logs-1").settings(indexSettings).build(), false)
+                .put(other.build(), false);
+
+        when(cs.state()).thenReturn(ClusterState.builder(new ClusterName("test")).metaData(metaData).build());
+    }
+}
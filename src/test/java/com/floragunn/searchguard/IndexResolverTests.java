@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.configuration.ClusterInfoHolder;
+import com.floragunn.searchguard.resolver.IndexResolverReplacer;
+import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
+import com.floragunn.searchguard.support.CacheStatsInfo;
+import com.floragunn.searchguard.support.ConfigConstants;
+
+public class IndexResolverTests {
+
+    private final ClusterService cs = mock(ClusterService.class);
+
+    @Test
+    public void testMemoizedPerMetaDataVersion() {
+        final IndexResolverReplacer irr = newIndexResolverReplacer(1000);
+
+        setState("uuid", 1L, "logs-1", "logs-2");
+        final Resolved first = resolve(irr, "logs-*");
+        Assert.assertEquals(Arrays.asList("logs-1", "logs-2"), sorted(first.getAllIndices()));
+        assertStats(irr, 0, 1);
+
+        Assert.assertEquals(sorted(first.getAllIndices()), sorted(resolve(irr, "logs-*").getAllIndices()));
+        assertStats(irr, 1, 1);
+
+        //the order of the expressions is part of the key
+        resolve(irr, "logs-2", "logs-1");
+        resolve(irr, "logs-1", "logs-2");
+        assertStats(irr, 1, 3);
+
+        setState("uuid", 2L, "logs-1", "logs-2", "logs-3");
+        Assert.assertEquals(Arrays.asList("logs-1", "logs-2", "logs-3"), sorted(resolve(irr, "logs-*").getAllIndices()));
+        assertStats(irr, 1, 4);
+
+        //a new cluster starts again with small versions
+        setState("other", 2L, "logs-1");
+        Assert.assertEquals(Arrays.asList("logs-1"), sorted(resolve(irr, "logs-*").getAllIndices()));
+        assertStats(irr, 1, 5);
+    }
+
+    @Test
+    public void testDateMath() {
+        final IndexResolverReplacer irr = newIndexResolverReplacer(1000);
+        setState("uuid", 1L, "logs-1");
+
+        //rounded to the day, so the expansion is part of the key
+        resolve(irr, "<logs-{now/d}>");
+        resolve(irr, "<logs-{now/d}>");
+        assertStats(irr, 1, 1);
+
+        //changes every millisecond, so it is not cached at all
+        resolve(irr, "<logs-{now}>");
+        resolve(irr, "<logs-{now}>");
+        assertStats(irr, 1, 1);
+    }
+
+    @Test
+    public void testDisabled() {
+        final IndexResolverReplacer irr = newIndexResolverReplacer(0);
+        setState("uuid", 1L, "logs-1", "logs-2");
+        Assert.assertNull(irr.getResolvedCacheStats());
+        Assert.assertEquals(Arrays.asList("logs-1", "logs-2"), sorted(resolve(irr, "logs-*").getAllIndices()));
+        Assert.assertEquals(Arrays.asList("logs-1", "logs-2"), sorted(resolve(irr, "logs-*").getAllIndices()));
+    }
+
+    private IndexResolverReplacer newIndexResolverReplacer(final int resolvedCacheSize) {
+        return new IndexResolverReplacer(new IndexNameExpressionResolver(Settings.EMPTY), cs, new ClusterInfoHolder(),
+                Settings.builder().put(ConfigConstants.SEARCHGUARD_CACHE_RESOLVED_INDICES_MAX_SIZE, resolvedCacheSize).build());
+    }
+
+    private static Resolved resolve(final IndexResolverReplacer irr, final String... indices) {
+        return irr.resolveRequest(new GetIndexRequest().indices(indices));
+    }
+
+    private static void assertStats(final IndexResolverReplacer irr, final long hits, final long misses) {
+        final CacheStatsInfo stats = irr.getResolvedCacheStats();
+        Assert.assertEquals("hits", hits, stats.getHitCount());
+        Assert.assertEquals("misses", misses, stats.getMissCount());
+    }
+
+    private static List<String> sorted(final Set<String> indices) {
+        final String[] sorted = indices.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    private void setState(final String clusterUUID, final long version, final String... indices) {
+        final Settings indexSettings = Settings.builder()
+                .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .build();
+
+        final MetaData.Builder metaData = MetaData.builder().clusterUUID(clusterUUID).version(version);
+        for(String index: indices) {
+            metaData.put(IndexMetaData.builder(index).settings(indexSettings).build(), false);
+        }
+
+        when(cs.state()).thenReturn(ClusterState.builder(new ClusterName("test")).metaData(metaData).build());
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.action.configupdate.ConfigUpdateAction;
+import com.floragunn.searchguard.action.configupdate.ConfigUpdateRequest;
+import com.floragunn.searchguard.action.configupdate.ConfigUpdateResponse;
+import com.floragunn.searchguard.action.stats.StatsInfoAction;
+import com.floragunn.searchguard.action.stats.StatsInfoNodeResponse;
+import com.floragunn.searchguard.action.stats.StatsInfoRequest;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.test.DynamicSgConfig;
+import com.floragunn.searchguard.test.SingleClusterTest;
+import com.floragunn.searchguard.test.helper.file.FileHelper;
+import com.floragunn.searchguard.test.helper.rest.RestHelper;
+import com.floragunn.searchguard.test.helper.rest.RestHelper.HttpResponse;
+
+public class RestAuthenticationTests extends SingleClusterTest {
+
+    @Test
+    public void testForkOnlyIfNotCached() throws Exception {
+        setup();
+        final RestHelper rh = nonSslRestHelper();
+
+        try (TransportClient tc = getInternalTransportClient()) {
+            tc.index(new IndexRequest("shakespeare").type("type").id("1").setRefreshPolicy(RefreshPolicy.IMMEDIATE).source("{\"content\":1}", XContentType.JSON)).actionGet();
+        }
+
+        //sg_shakespeare -> picard
+        //not cached, the password is checked on the auth thread pool and the search continues on the generic thread pool
+        HttpResponse res = rh.executeGetRequest("shakespeare/_search", encodeBasicHeader("picard", "picard"));
+        Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertTrue(res.getBody().contains("\"content\":1"));
+        Assert.assertEquals(1, getAuthThreadPoolStat("forked"));
+
+        //cached, authenticated on the calling thread
+        res = rh.executeGetRequest("shakespeare/_search", encodeBasicHeader("picard", "picard"));
+        Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertTrue(res.getBody().contains("\"content\":1"));
+        Assert.assertEquals(1, getAuthThreadPoolStat("forked"));
+        Assert.assertEquals(0, getAuthThreadPoolStat("rejected"));
+    }
+
+    @Test
+    public void testThreadContextAfterFork() throws Exception {
+        setup();
+        final RestHelper rh = nonSslRestHelper();
+
+        //the remote address is put into the thread context before and the user after the fork
+        final HttpResponse res = rh.executeGetRequest("_searchguard/authinfo?pretty", new BasicHeader("sgtenant", "kirk_tenant"), encodeBasicHeader("nagilum", "nagilum"));
+        Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertEquals(1, getAuthThreadPoolStat("forked"));
+        assertContains(res, "*\"user_name\" : \"nagilum\"*");
+        assertContains(res, "*\"user_requested_tenant\" : \"kirk_tenant\"*");
+        assertContains(res, "*\"remote_address\" : \"*");
+        assertNotContains(res, "*\"remote_address\" : null*");
+    }
+
+    @Test
+    public void testRejectedIfAuthThreadPoolIsExhausted() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig(), Settings.builder()
+                .put(ConfigConstants.SEARCHGUARD_AUTH_THREADPOOL_PREFIX+".size", 1)
+                .put(ConfigConstants.SEARCHGUARD_AUTH_THREADPOOL_PREFIX+".queue_size", 1)
+                .build());
+        final RestHelper rh = nonSslRestHelper();
+
+        final int requests = 20;
+        final ExecutorService executor = Executors.newFixedThreadPool(requests);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Integer>> statusCodes = new ArrayList<>(requests);
+        int rejected = 0;
+
+        try {
+            for (int i = 0; i < requests; i++) {
+                //every password is a cache miss, so all of them wait for one bcrypt check at a time
+                final String password = "wrong"+i;
+                statusCodes.add(executor.submit(() -> {
+                    start.await();
+                    return rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", password)).getStatusCode();
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<Integer> statusCode: statusCodes) {
+                if(statusCode.get() == RestStatus.TOO_MANY_REQUESTS.getStatus()) {
+                    rejected++;
+                } else {
+                    Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, statusCode.get().intValue());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertTrue(rejected > 0);
+        Assert.assertEquals(rejected, getAuthThreadPoolStat("rejected"));
+        Assert.assertEquals(requests, getAuthThreadPoolStat("forked"));
+
+        //the rejections do not leave anything behind
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+    }
+
+    @Test
+    public void testFailedAuthenticationCache() throws Exception {
+        setup();
+        final RestHelper rh = nonSslRestHelper();
+
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", "wrong")).getStatusCode());
+        Assert.assertEquals(1, getAuthThreadPoolStat("forked"));
+        Assert.assertEquals(0, getCacheHits("failed_authentications"));
+
+        //rejected again without asking the internal users, so there is no need to fork
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", "wrong")).getStatusCode());
+        Assert.assertEquals(1, getAuthThreadPoolStat("forked"));
+        Assert.assertEquals(1, getCacheHits("failed_authentications"));
+
+        //only the rejected password is remembered
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+
+        //unknown users are rejected credentials too
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("userwhonotexists", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("userwhonotexists", "nagilum")).getStatusCode());
+        Assert.assertEquals(2, getCacheHits("failed_authentications"));
+        Assert.assertEquals(0, getCacheMisses("failed_authentications"));
+    }
+
+    @Test
+    public void testFailedAuthenticationOtherAuthDomain() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig().setSgConfig("sg_config_basic_noop.yml"), Settings.EMPTY);
+        final RestHelper rh = nonSslRestHelper();
+
+        //the internal users reject the password, but the second auth domain accepts every password
+        for (int i = 0; i < 2; i++) {
+            final HttpResponse res = rh.executeGetRequest("_searchguard/authinfo?pretty", encodeBasicHeader("nagilum", "wrong"));
+            Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+            assertContains(res, "*\"user_name\" : \"nagilum\"*");
+        }
+
+        Assert.assertEquals(1, getCacheHits("failed_authentications"));
+    }
+
+    @Test
+    public void testFailedAuthenticationCacheInvalidatedOnConfigUpdate() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig().setSgInternalUsers("sg_internal_empty.yml"), Settings.EMPTY);
+        final RestHelper rh = nonSslRestHelper();
+
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(1, getCacheHits("failed_authentications"));
+
+        try (TransportClient tc = getInternalTransportClient()) {
+            tc.index(new IndexRequest("searchguard").type("sg").id("internalusers").setRefreshPolicy(RefreshPolicy.IMMEDIATE).source("internalusers", FileHelper.readYamlContent("sg_internal_users.yml"))).actionGet();
+
+            ConfigUpdateResponse cur = tc.execute(ConfigUpdateAction.INSTANCE, new ConfigUpdateRequest(new String[]{"internalusers"})).actionGet();
+            Assert.assertEquals(clusterInfo.numNodes, cur.getNodes().size());
+        }
+
+        //nagilum exists now, so the rejection must be forgotten
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        setup();
+        final RestHelper rh = nonSslRestHelper();
+
+        //checking the caches before a fork does not count as a miss
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("spock", "spock")).getStatusCode());
+        Assert.assertEquals(0, getCacheHits("users_rest"));
+        Assert.assertEquals(1, getCacheMisses("users_rest"));
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("spock", "spock")).getStatusCode());
+        Assert.assertEquals(1, getCacheHits("users_rest"));
+        Assert.assertEquals(1, getCacheMisses("users_rest"));
+
+        //the rest node forked for spock and for nagilum
+        final HttpResponse res = rh.executeGetRequest("_searchguard/stats/_local?pretty", encodeBasicHeader("nagilum", "nagilum"));
+        Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+        assertContains(res, "*\"users_rest\" : {*");
+        assertContains(res, "*\"failed_authentications\" : {*");
+        assertContains(res, "*\"effective_permissions\" : {*");
+        assertContains(res, "*\"dls_fls\" : {*");
+        assertContains(res, "*\"resolved_indices\" : {*");
+        assertContains(res, "*\"hit_ratio\"*");
+        assertContains(res, "*\"auth_thread_pool\" : {*\"forked\" : 2,*");
+        Assert.assertEquals(2, getAuthThreadPoolStat("forked"));
+    }
+
+    //summed up over all nodes, only the node of the rest helper authenticates rest requests
+    private long getAuthThreadPoolStat(final String name) {
+        long sum = 0;
+        for(StatsInfoNodeResponse node: getStats()) {
+            sum += ((Number) node.getAuthThreadPool().get(name)).longValue();
+        }
+        return sum;
+    }
+
+    private long getCacheHits(final String cache) {
+        long sum = 0;
+        for(StatsInfoNodeResponse node: getStats()) {
+            sum += node.getCaches().get(cache).getHitCount();
+        }
+        return sum;
+    }
+
+    private long getCacheMisses(final String cache) {
+        long sum = 0;
+        for(StatsInfoNodeResponse node: getStats()) {
+            sum += node.getCaches().get(cache).getMissCount();
+        }
+        return sum;
+    }
+
+    private List<StatsInfoNodeResponse> getStats() {
+        try (TransportClient tc = getInternalTransportClient()) {
+            return tc.execute(StatsInfoAction.INSTANCE, new StatsInfoRequest()).actionGet().getNodes();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.sgconf.RolesMappingModel;
+import com.floragunn.searchguard.sgconf.RolesMappingModel.SgRoleMappings;
+import com.floragunn.searchguard.support.WildcardMatcher;
+import com.floragunn.searchguard.user.User;
+
+public class RolesMappingTests {
+
+    private static final Settings ROLES_MAPPING = Settings.builder()
+            .putList("sg_all_access.backendroles", "admin")
+            .putList("sg_all_access.users", "root", "nagilum")
+            .putList("sg_logs.backendroles", "logs_*", "ops")
+            .putList("sg_logs.users", "log*")
+            .putList("sg_ops.backendroles", "ops")
+            .putList("sg_team.backendroles", "/team-\\d+/")
+            .putList("sg_dev_ops.and_backendroles", "ops", "dev*")
+            .putList("sg_local.hosts", "127.0.0.*", "local*")
+            .putList("sg_local.users", "kirk")
+            .putList("sg_kirk.users", "kirk")
+            .putList("sg_unmapped.backendroles", "nobody")
+            .build();
+
+    @Test
+    public void testMapSameAsMappingLoop() throws Exception {
+        final SgRoleMappings sgRoleMappings = RolesMappingModel.compile(ROLES_MAPPING);
+        Assert.assertTrue(sgRoleMappings.hasHostsRules());
+
+        final List<String> names = Arrays.asList("root", "logstash", "kirk", "spock");
+        final List<List<String>> backendRoles = Arrays.asList(Collections.emptyList(), Arrays.asList("admin"), Arrays.asList("logs_read"),
+                Arrays.asList("ops"), Arrays.asList("ops", "dev1"), Arrays.asList("dev1"), Arrays.asList("team-12"), Arrays.asList("team-x"));
+        //the host name of the second address is given, so ip-hostname does not need a dns lookup
+        final List<TransportAddress> callers = Arrays.asList(null,
+                new TransportAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), 9300),
+                new TransportAddress(InetAddress.getByAddress("localhost", new byte[]{10, 0, 0, 1}), 9300),
+                new TransportAddress(InetAddress.getByAddress(new byte[]{10, 0, 0, 2}), 9300));
+
+        for(String name: names) {
+            for(List<String> roles: backendRoles) {
+                for(TransportAddress caller: callers) {
+                    for(String hostResolverMode: new String[]{"ip-only", "ip-hostname"}) {
+                        final User user = new User(name, roles, null);
+                        final Set<String> sgRoles = new TreeSet<>();
+                        sgRoleMappings.map(user, caller, hostResolverMode, sgRoles);
+                        Assert.assertEquals(user+" from "+caller+" ("+hostResolverMode+")",
+                                mapWithLoop(ROLES_MAPPING, user, caller, hostResolverMode), sgRoles);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMapWithoutResidualRules() throws Exception {
+        final SgRoleMappings sgRoleMappings = RolesMappingModel.compile(Settings.builder()
+                .putList("sg_a.backendroles", "a", "b")
+                .putList("sg_a.users", "alice")
+                .putList("sg_b.backendroles", "b")
+                .build());
+        Assert.assertFalse(sgRoleMappings.hasHostsRules());
+
+        final Set<String> sgRoles = new TreeSet<>();
+        sgRoleMappings.map(new User("alice", Arrays.asList("b"), null), null, "ip-only", sgRoles);
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("sg_a", "sg_b")), sgRoles);
+
+        sgRoles.clear();
+        sgRoleMappings.map(new User("bob", Arrays.asList("c"), null), null, "ip-only", sgRoles);
+        Assert.assertTrue(sgRoles.isEmpty());
+    }
+
+    //how PrivilegesEvaluator mapped roles before the roles mapping was compiled
+    private static Set<String> mapWithLoop(final Settings rolesMapping, final User user, final TransportAddress caller, final String hostResolverMode) {
+        final Set<String> sgRoles = new TreeSet<>();
+        for (final String roleMap : rolesMapping.names()) {
+            final Settings roleMapSettings = rolesMapping.getByPrefix(roleMap);
+            if (WildcardMatcher.allPatternsMatched(roleMapSettings.getAsList(".and_backendroles", Collections.emptyList()).toArray(new String[0]), user.getRoles().toArray(new String[0]))) {
+                sgRoles.add(roleMap);
+                continue;
+            }
+
+            if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".backendroles", Collections.emptyList()).toArray(new String[0]), user.getRoles().toArray(new String[0]))) {
+                sgRoles.add(roleMap);
+                continue;
+            }
+
+            if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".users"), user.getName())) {
+                sgRoles.add(roleMap);
+                continue;
+            }
+
+            if(caller != null) {
+                if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".hosts"), caller.getAddress())) {
+                    sgRoles.add(roleMap);
+                    continue;
+                }
+
+                if(caller.address() != null && (hostResolverMode.equalsIgnoreCase("ip-hostname") || hostResolverMode.equalsIgnoreCase("ip-hostname-lookup"))){
+                    if (WildcardMatcher.matchAny(roleMapSettings.getAsList(".hosts"), caller.address().getHostString())) {
+                        sgRoles.add(roleMap);
+                        continue;
+                    }
+                }
+            }
+        }
+        return sgRoles;
+    }
+}
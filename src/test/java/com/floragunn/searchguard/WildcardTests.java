@@ -17,6 +17,14 @@
 
 package com.floragunn.searchguard;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -50,4 +58,99 @@ public class WildcardTests {
         Assert.assertTrue(WildcardMatcher.containsWildcard("a?bc"));
         Assert.assertTrue(WildcardMatcher.containsWildcard("/(\\d{3}-\\d{2}-?\\d{4})/"));
     }
+
+    @Test
+    public void testSortedCandidates() {
+        final NavigableSet<String> candidates = new TreeSet<>(Arrays.asList("logs-app-1", "logs-app-2", "logs-web-1", "logs", "metrics-2026.10.01", "xlogs-app-1"));
+        Assert.assertEquals(Arrays.asList("logs-app-1", "logs-app-2"), WildcardMatcher.getMatchAny("logs-app-*", candidates));
+        Assert.assertEquals(Arrays.asList("logs-app-1", "logs-web-1"), WildcardMatcher.getMatchAny("logs-*-1", candidates));
+        Assert.assertEquals(Arrays.asList("logs-app-1", "xlogs-app-1"), WildcardMatcher.getMatchAny("*logs-app-1", candidates));
+        Assert.assertEquals(Arrays.asList("logs"), WildcardMatcher.getMatchAny("logs", candidates));
+        Assert.assertEquals(Arrays.asList("logs"), WildcardMatcher.getMatchAny("log?", candidates));
+        Assert.assertEquals(Arrays.asList("metrics-2026.10.01"), WildcardMatcher.getMatchAny("/metrics-.*/", candidates));
+        Assert.assertTrue(WildcardMatcher.getMatchAny("nomatch*", candidates).isEmpty());
+        Assert.assertEquals(Arrays.asList("logs-app-1", "logs-app-2", "metrics-2026.10.01"), WildcardMatcher.getMatchAny(new String[]{"metrics-*", "logs-app-*", "logs-app-1"}, candidates));
+    }
+
+    @Test
+    public void testCompiled() {
+        final String[] patterns = new String[]{"*", "**", "abc", "abc*", "*abc", "*abc*", "a*?", "*my*index?", "?kibana", "/\\S*/", "/(\\d{3}-?\\d{2}-?\\d{4})/", ""};
+        final String[] candidates = new String[]{"", "abc", "abcabc", "xabc", "abcx", "aa", "a", "myindex1", ".kibana", "kibana", "123-45-6789", null};
+        for(String pattern: patterns) {
+            final WildcardMatcher.Matcher matcher = WildcardMatcher.compile(pattern);
+            for(String candidate: candidates) {
+                Assert.assertEquals(pattern+" on "+candidate, WildcardMatcher.match(pattern, candidate), matcher.matches(candidate));
+            }
+        }
+        Assert.assertFalse(WildcardMatcher.compile((String) null).matches("abc"));
+        Assert.assertTrue(WildcardMatcher.matchAny(WildcardMatcher.compile(Arrays.asList("x*", "*bc")), "abc"));
+    }
+
+    @Test
+    public void testCompiledSet() {
+        final List<String> patterns = Arrays.asList("abc", "logs-*", "*-metrics", "a?c*x", "/\\d+/", "x*?");
+        final WildcardMatcher.Matcher matcher = WildcardMatcher.compileSet(patterns);
+        for(String candidate: new String[]{"abc", "logs-1", "logs", "app-metrics", "a1cx", "a1c", "123", "xy", "x", "", null}) {
+            Assert.assertEquals(String.valueOf(candidate), WildcardMatcher.matchAny(patterns, candidate), matcher.matches(candidate));
+        }
+        Assert.assertTrue(WildcardMatcher.compileSet(Arrays.asList("x", "*")).matches("abc"));
+        Assert.assertFalse(WildcardMatcher.compileSet(Collections.emptyList()).matches("abc"));
+    }
+
+    @Test
+    public void testCompiledSetPaths() {
+        //prefixes only, one is a prefix of another
+        assertSameAsMatchAny(Arrays.asList("log*", "logs-app-*", "metrics-*"), "log", "logs", "logs-app-1", "metrics-", "metric", "xlog", "");
+        //wildcards in the automaton
+        assertSameAsMatchAny(Arrays.asList("*-metrics", "a?c", "*x*y", "?", "a*b*c"), "app-metrics", "abc", "ac", "xy", "axby", "x", "aabbcc", "acb", "");
+        //regex and *? are matched one by one
+        assertSameAsMatchAny(Arrays.asList("/\\d+/", "a*?", "exact", "pre*"), "123", "a", "aa", "exact", "exactly", "prefix", "12a");
+        //? is one char but a surrogate pair is one code point
+        assertSameAsMatchAny(Arrays.asList("?x", "??x", "*-\uD83D\uDE00"), "\uD83D\uDE00x", "ax", "abx", "a-\uD83D\uDE00", "\uD83D\uDE00");
+        //too complex to determinize, so the wildcards are matched one by one
+        assertSameAsMatchAny(Arrays.asList("*a??????????????", "*b*"), "a", "aaaaaaaaaaaaaaaaa", "xaxxxxxxxxxxxxxx", "b", "cccccccccccccccccccc");
+    }
+
+    @Test
+    public void testCompiledSetRandom() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final List<String> patterns = new ArrayList<>();
+            for (int j = random.nextInt(8) + 2; j > 0; j--) {
+                patterns.add(randomString(random, "ab-*?"));
+            }
+            final String[] candidates = new String[50];
+            for (int j = 0; j < candidates.length; j++) {
+                candidates[j] = randomString(random, "ab-");
+            }
+            assertSameAsMatchAny(patterns, candidates);
+        }
+    }
+
+    private static void assertSameAsMatchAny(final List<String> patterns, final String... candidates) {
+        final WildcardMatcher.Matcher matcher = WildcardMatcher.compileSet(patterns);
+        for(String candidate: candidates) {
+            Assert.assertEquals(patterns+" on "+candidate, WildcardMatcher.matchAny(patterns, candidate), matcher.matches(candidate));
+        }
+    }
+
+    private static String randomString(final Random random, final String chars) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(7); i > 0; i--) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testIgnoreCase() {
+        final WildcardMatcher.Matcher matcher = WildcardMatcher.compile("CN=node-*.example.com,OU=SSL,O=Test", true);
+        Assert.assertTrue(matcher.matches("cn=NODE-0.example.com,ou=ssl,o=test"));
+        Assert.assertFalse(matcher.matches("CN=node-0.example.com,OU=SSL,O=Test2"));
+        Assert.assertTrue(WildcardMatcher.compile("*.EXAMPLE.com", true).matches("node.example.COM"));
+        Assert.assertTrue(WildcardMatcher.compile("ABC", true).matches("abc"));
+        Assert.assertTrue(WildcardMatcher.compile("/A.C/", true).matches("abc"));
+        Assert.assertTrue(WildcardMatcher.match("*my*index", "MYindex", true));
+        Assert.assertFalse(WildcardMatcher.compile("ABC", false).matches("abc"));
+    }
 }
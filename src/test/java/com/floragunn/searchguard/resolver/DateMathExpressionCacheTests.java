@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.resolver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DateMathExpressionCacheTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void testBucketMillis() {
+        //finest unit of the rounding
+        Assert.assertEquals(DAY, DateMathExpressionCache.bucketMillis("<logs-{now/d}>"));
+        Assert.assertEquals(DAY, DateMathExpressionCache.bucketMillis("<logs-{now/M{yyyy.MM}}>"));
+        Assert.assertEquals(DAY, DateMathExpressionCache.bucketMillis("<logs-{now/w}>"));
+        Assert.assertEquals(DAY, DateMathExpressionCache.bucketMillis("<logs-{now/y}>"));
+        Assert.assertEquals(HOUR, DateMathExpressionCache.bucketMillis("<logs-{now/H}>"));
+        Assert.assertEquals(HOUR, DateMathExpressionCache.bucketMillis("<logs-{now/h}>"));
+        Assert.assertEquals(MINUTE, DateMathExpressionCache.bucketMillis("<logs-{now/m}>"));
+        Assert.assertEquals(SECOND, DateMathExpressionCache.bucketMillis("<logs-{now/s}>"));
+
+        //offsets are whole units too, so the finest unit of offset and rounding counts
+        Assert.assertEquals(DAY, DateMathExpressionCache.bucketMillis("<logs-{now-1d/d}>"));
+        Assert.assertEquals(HOUR, DateMathExpressionCache.bucketMillis("<logs-{now-1h/d}>"));
+        Assert.assertEquals(MINUTE, DateMathExpressionCache.bucketMillis("<logs-{now/d-30m}>"));
+        Assert.assertEquals(HOUR, DateMathExpressionCache.bucketMillis("<logs-{now/d}-{now/h}>"));
+
+        //time zones are not always whole hours
+        Assert.assertEquals(MINUTE, DateMathExpressionCache.bucketMillis("<logs-{now/d{yyyy.MM.dd|+01:00}}>"));
+        Assert.assertEquals(SECOND, DateMathExpressionCache.bucketMillis("<logs-{now/s{yyyy.MM.dd.HH.mm.ss|Europe/Berlin}}>"));
+        Assert.assertEquals(DAY, DateMathExpressionCache.bucketMillis("<logs-{now/d{yyyy.MM.dd}}>"));
+    }
+
+    @Test
+    public void testNotCacheable() {
+        //not rounded
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{now}>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{now-1d}>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{now/d}-{now}>"));
+        //not relative to now, unknown unit, incomplete or broken
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{2018.01.01||/d}>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{now/x}>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{now/}>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{now-1}>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-{now/d>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-now/d}>"));
+        //escaped braces
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs-\\{-{now/d}>"));
+        //no date math
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("<logs>"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis("logs-{now/d}"));
+        Assert.assertEquals(DateMathExpressionCache.NOT_CACHEABLE, DateMathExpressionCache.bucketMillis(null));
+    }
+
+    @Test
+    public void testResolve() {
+        final CountingResolver resolver = new CountingResolver();
+        final DateMathExpressionCache cache = new DateMathExpressionCache(resolver);
+
+        final String[] expressions = new String[]{"logs", "<logs-{now/d}>"};
+        final String[] resolved = cache.resolve(expressions);
+        Assert.assertNotSame(expressions, resolved);
+        Assert.assertSame(expressions[0], resolved[0]);
+        Assert.assertEquals(resolver.resolveDateMathExpression(expressions[1]), resolved[1]);
+        Assert.assertTrue(cache.isCacheable(expressions));
+
+        //the expansion stays until the end of the day
+        resolver.count.set(0);
+        Assert.assertEquals(resolved[1], cache.resolve(expressions[1]));
+        Assert.assertEquals(0, resolver.count.get());
+
+        final String[] plain = new String[]{"logs", "metrics"};
+        Assert.assertSame(plain, cache.resolve(plain));
+        Assert.assertTrue(cache.isCacheable(plain));
+        Assert.assertNull(cache.resolve((String[]) null));
+
+        //unrounded expressions are always expanded by the resolver
+        resolver.count.set(0);
+        cache.resolve("<logs-{now}>");
+        cache.resolve("<logs-{now}>");
+        Assert.assertEquals(2, resolver.count.get());
+        Assert.assertFalse(cache.isCacheable(new String[]{"<logs-{now/d}>", "<logs-{now}>"}));
+    }
+
+    private static class CountingResolver extends IndexNameExpressionResolver {
+        private final AtomicInteger count = new AtomicInteger();
+
+        private CountingResolver() {
+            super(Settings.EMPTY);
+        }
+
+        @Override
+        public String resolveDateMathExpression(String dateExpression) {
+            count.incrementAndGet();
+            return super.resolveDateMathExpression(dateExpression);
+        }
+    }
+}